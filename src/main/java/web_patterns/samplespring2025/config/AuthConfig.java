@@ -0,0 +1,102 @@
+package web_patterns.samplespring2025.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import web_patterns.samplespring2025.filters.BearerTokenFilter;
+import web_patterns.samplespring2025.services.AuthTokenService;
+import web_patterns.samplespring2025.services.ExpiringTokenStore;
+import web_patterns.samplespring2025.services.OpaqueTokenService;
+import web_patterns.samplespring2025.services.PasswordHashingExecutor;
+import web_patterns.samplespring2025.services.SignedTokenService;
+import web_patterns.samplespring2025.services.TokenStore;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Build the login token store, token service, token filter and password hashing executor from the auth.* entries in
+// application.properties
+@Slf4j
+@Configuration
+public class AuthConfig {
+    private Environment env;
+
+    public AuthConfig(Environment env){
+        this.env = env;
+    }
+
+    @Bean
+    public TokenStore tokenStore(){
+        long ttlSeconds = env.getProperty("auth.token.ttlSeconds", Long.class, 1800L);
+        boolean sliding = env.getProperty("auth.token.expiry", "sliding").equalsIgnoreCase("sliding");
+        int maxEntries = env.getProperty("auth.token.maxEntries", Integer.class, 100_000);
+        int stripes = env.getProperty("auth.token.stripes", Integer.class, 16);
+        return new ExpiringTokenStore(ttlSeconds, sliding, maxEntries, stripes);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PasswordHashingExecutor passwordHashingExecutor(MeterRegistry registry){
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = env.getProperty("auth.hashing.threads", Integer.class, cores);
+        int queueCapacity = env.getProperty("auth.hashing.queueCapacity", Integer.class, threads * 4);
+        long timeoutMs = env.getProperty("auth.hashing.timeoutMs", Long.class, 5000L);
+        return new PasswordHashingExecutor(threads, queueCapacity, timeoutMs, registry);
+    }
+
+    @Bean
+    public AuthTokenService authTokenService(TokenStore tokenStore){
+        String mode = env.getProperty("auth.token.mode", "opaque");
+        if(!mode.equalsIgnoreCase("signed")){
+            return new OpaqueTokenService(tokenStore);
+        }
+
+        long ttlSeconds = env.getProperty("auth.token.ttlSeconds", Long.class, 1800L);
+        int maxRevoked = env.getProperty("auth.token.maxRevoked", Integer.class, 10_000);
+        Map<Integer, byte[]> keys = signingKeys(env.getProperty("auth.token.signingKeys", ""));
+        if(keys.isEmpty()){
+            log.warn("No auth.token.signingKeys configured - using a random key, so tokens are only valid on this " +
+                    "instance until it restarts");
+            byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            keys.put(0, key);
+            return new SignedTokenService(keys, 0, ttlSeconds, maxRevoked);
+        }
+        // Defaults to the newest (highest numbered) key
+        int activeKeyId = env.getProperty("auth.token.activeKeyId", Integer.class, Collections.max(keys.keySet()));
+        return new SignedTokenService(keys, activeKeyId, ttlSeconds, maxRevoked);
+    }
+
+    // id:base64secret entries separated by commas, e.g. 1:3q2+7w...,2:yv66vg...
+    private static Map<Integer, byte[]> signingKeys(String value){
+        Map<Integer, byte[]> keys = new HashMap<>();
+        for(String entry : value.split(",")){
+            if(entry.isBlank()){
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if(colon < 1){
+                throw new IllegalArgumentException("auth.token.signingKeys entries must be id:base64secret");
+            }
+            keys.put(Integer.parseInt(entry.substring(0, colon).trim()),
+                    Base64.getDecoder().decode(entry.substring(colon + 1).trim()));
+        }
+        return keys;
+    }
+
+    // Requires a login token on the endpoints listed in auth.filter.urlPatterns (off unless auth.filter.enabled)
+    @Bean
+    public FilterRegistrationBean<BearerTokenFilter> bearerTokenFilter(AuthTokenService authTokenService){
+        FilterRegistrationBean<BearerTokenFilter> registration =
+                new FilterRegistrationBean<>(new BearerTokenFilter(authTokenService));
+        registration.addUrlPatterns(env.getProperty("auth.filter.urlPatterns",
+                "/api/products/add,/api/products/bulk").split(","));
+        registration.setEnabled(env.getProperty("auth.filter.enabled", Boolean.class, false));
+        return registration;
+    }
+}
@@ -0,0 +1,47 @@
+package web_patterns.samplespring2025.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import web_patterns.samplespring2025.services.CatalogVersion;
+import web_patterns.samplespring2025.services.ProductCache;
+import web_patterns.samplespring2025.services.ProductFacetIndex;
+import web_patterns.samplespring2025.services.ProductSearchIndex;
+import web_patterns.samplespring2025.utils.BoundedCache;
+
+// Build the product cache, search index and facet index used by ProductService from the product.cache.* and product.search.*
+// entries in application.properties
+@Configuration
+public class CacheConfig {
+    private Environment env;
+
+    public CacheConfig(Environment env){
+        this.env = env;
+    }
+
+    @Bean
+    public ProductCache productCache(){
+        boolean enabled = env.getProperty("product.cache.enabled", Boolean.class, true);
+        int maxSize = env.getProperty("product.cache.maxSize", Integer.class, 500);
+        long ttlMillis = env.getProperty("product.cache.ttlSeconds", Long.class, 300L) * 1000;
+        BoundedCache.EvictionPolicy policy = BoundedCache.EvictionPolicy.valueOf(
+                env.getProperty("product.cache.policy", "LRU").toUpperCase());
+        return new ProductCache(enabled, maxSize, ttlMillis, policy);
+    }
+
+    @Bean
+    public CatalogVersion catalogVersion(){
+        return new CatalogVersion();
+    }
+
+    @Bean
+    public ProductSearchIndex productSearchIndex(){
+        boolean includeNamesAndVendors = env.getProperty("product.search.indexNamesAndVendors", Boolean.class, false);
+        return new ProductSearchIndex(includeNamesAndVendors);
+    }
+
+    @Bean
+    public ProductFacetIndex productFacetIndex(){
+        return new ProductFacetIndex();
+    }
+}
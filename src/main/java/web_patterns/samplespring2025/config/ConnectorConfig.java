@@ -1,15 +1,27 @@
 package web_patterns.samplespring2025.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.env.Environment;
+import web_patterns.samplespring2025.persistence.CircuitBreakerConnector;
 import web_patterns.samplespring2025.persistence.Connector;
+import web_patterns.samplespring2025.persistence.ConnectorProperties;
 import web_patterns.samplespring2025.persistence.MySqlConnector;
+import web_patterns.samplespring2025.persistence.PooledConnector;
+import web_patterns.samplespring2025.persistence.RoutingConnector;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 // Create a way to build a Connector with a specific properties file
 // Properties file path is included in application.properties - Spring boot's properties file
+// The connector.type entry in that properties file picks the implementation (pooled, routing or simple), which is
+// wrapped in a circuit breaker unless breaker.enabled=false
+@Slf4j
 @Configuration
 public class ConnectorConfig {
     private Environment env;
@@ -18,9 +30,55 @@ public class ConnectorConfig {
         this.env = env;
     }
 
+    // Created at startup even with lazy initialization (faststart profile), so the pool is filled and a bad database
+    // configuration is reported before the first request rather than during it
     @Bean
+    @Lazy(false)
     public Connector connector() throws IOException {
         String path = env.getProperty("connector.properties.path");
-        return new MySqlConnector(path);
+        Properties properties = ConnectorProperties.load(path);
+        String type = properties.getProperty(ConnectorProperties.CONNECTOR_TYPE, ConnectorProperties.TYPE_POOLED);
+
+        Connector connector;
+        if(type.equalsIgnoreCase(ConnectorProperties.TYPE_SIMPLE)){
+            log.info("Using simple (unpooled) connector");
+            connector = new MySqlConnector(properties);
+        }else if(type.equalsIgnoreCase(ConnectorProperties.TYPE_ROUTING)){
+            connector = routingConnector(properties);
+        }else{
+            connector = new PooledConnector(properties);
+        }
+        return withCircuitBreaker(connector, properties);
+    }
+
+    // Refuse database calls straight away while the database is failing (breaker.* - on unless breaker.enabled=false)
+    private static Connector withCircuitBreaker(Connector connector, Properties properties){
+        if(!Boolean.parseBoolean(properties.getProperty(ConnectorProperties.BREAKER_ENABLED, "true").trim())){
+            return connector;
+        }
+        int failureThreshold = ConnectorProperties.getInt(properties, ConnectorProperties.BREAKER_FAILURE_THRESHOLD, 5);
+        long openMs = ConnectorProperties.getLong(properties, ConnectorProperties.BREAKER_OPEN_MS, 5000);
+        log.info("Circuit breaker opens after {} failed connection attempts, probing every {}ms", failureThreshold,
+                openMs);
+        return new CircuitBreakerConnector(connector, failureThreshold, openMs);
+    }
+
+    // A pool for the primary plus one per replica URL - replicas share the primary's database name, credentials and
+    // pool settings
+    private static RoutingConnector routingConnector(Properties properties){
+        List<PooledConnector> replicas = new ArrayList<>();
+        for(String url : properties.getProperty(ConnectorProperties.REPLICA_URLS, "").split(",")){
+            if(url.isBlank()){
+                continue;
+            }
+            Properties replica = new Properties();
+            replica.putAll(properties);
+            replica.setProperty("url", url.trim());
+            replicas.add(new PooledConnector(replica));
+        }
+        long ejectMs = ConnectorProperties.getLong(properties, ConnectorProperties.REPLICA_EJECT_MS, 30_000);
+        long pinMs = ConnectorProperties.getLong(properties, ConnectorProperties.REPLICA_PIN_MS, 1000);
+        log.info("Using routing connector with {} replicas", replicas.size());
+        return new RoutingConnector(new PooledConnector(properties), replicas, ejectMs, pinMs);
     }
-}
\ No newline at end of file
+}
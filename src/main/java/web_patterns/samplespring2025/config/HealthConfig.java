@@ -0,0 +1,26 @@
+package web_patterns.samplespring2025.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import web_patterns.samplespring2025.services.WarmupService;
+
+// Health indicators added by the application - see the management.endpoint.health.* entries in
+// application.properties for the groups they belong to
+@Configuration
+public class HealthConfig {
+
+    // Registered as "warmup" - OUT_OF_SERVICE (so /actuator/health/readiness answers 503) while warm-up is running
+    @Bean
+    public HealthIndicator warmupHealthIndicator(WarmupService warmupService){
+        return () -> {
+            Health.Builder health = warmupService.isDone() ? Health.up() : Health.outOfService();
+            return health.withDetail("status", warmupService.getStatus())
+                    .withDetail("budgetMs", warmupService.getBudgetMs())
+                    .withDetail("durationMs", warmupService.getDurationMs())
+                    .withDetail("steps", warmupService.getSteps())
+                    .build();
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package web_patterns.samplespring2025.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import web_patterns.samplespring2025.persistence.CircuitBreakerConnector;
+import web_patterns.samplespring2025.persistence.Connector;
+import web_patterns.samplespring2025.persistence.PooledConnector;
+import web_patterns.samplespring2025.persistence.RoutingConnector;
+import web_patterns.samplespring2025.services.AuthTokenService;
+import web_patterns.samplespring2025.services.ProductCache;
+import web_patterns.samplespring2025.services.ProductService;
+import web_patterns.samplespring2025.services.SignedTokenService;
+import web_patterns.samplespring2025.utils.BatchLoader;
+import web_patterns.samplespring2025.utils.SingleFlight;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Publish the connection pool, product cache and login token statistics as metrics (see /actuator/prometheus)
+// Request latency is covered by Spring's own http.server.requests timer and DAO latency by DaoMetricsAspect
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder connectionPoolMetrics(Connector connector){
+        return registry -> {
+            Connector pools = connector;
+            if(connector instanceof CircuitBreakerConnector breaker){
+                bindCircuitBreaker(registry, breaker);
+                pools = breaker.getDelegate();
+            }
+            if(pools instanceof RoutingConnector routing){
+                bindPool(registry, routing.getPrimary(), "primary");
+                List<Connector> replicas = routing.getReplicas();
+                for(int i = 0; i < replicas.size(); i++){
+                    bindPool(registry, replicas.get(i), "replica-" + i);
+                    int replica = i;
+                    Gauge.builder("db.replica.ejected", routing, r -> r.isEjected(replica) ? 1 : 0)
+                            .description("1 while the replica is out of rotation after a failure")
+                            .tag("pool", "replica-" + i)
+                            .register(registry);
+                }
+            }else{
+                bindPool(registry, pools, "primary");
+            }
+        };
+    }
+
+    private static void bindCircuitBreaker(MeterRegistry registry, CircuitBreakerConnector breaker){
+        Gauge.builder("db.breaker.open", breaker, b -> b.getState() == CircuitBreakerConnector.State.CLOSED ? 0 : 1)
+                .description("1 while database calls are being refused after repeated connection failures")
+                .register(registry);
+        FunctionCounter.builder("db.breaker.rejected", breaker, CircuitBreakerConnector::getRejected)
+                .description("Database calls refused while the circuit breaker was open")
+                .register(registry);
+        FunctionCounter.builder("db.breaker.opened", breaker, CircuitBreakerConnector::getOpened)
+                .register(registry);
+    }
+
+    private static void bindPool(MeterRegistry registry, Connector connector, String name){
+        // The simple connector has no pool to report on
+        if(!(connector instanceof PooledConnector pool)){
+            return;
+        }
+        Gauge.builder("db.pool.active", pool, PooledConnector::getActiveCount)
+                .description("Connections currently borrowed")
+                .tag("pool", name)
+                .register(registry);
+        Gauge.builder("db.pool.idle", pool, PooledConnector::getIdleCount)
+                .description("Open connections waiting in the pool")
+                .tag("pool", name)
+                .register(registry);
+        Gauge.builder("db.pool.max", pool, PooledConnector::getMaxSize)
+                .description("Most connections the pool will open")
+                .tag("pool", name)
+                .register(registry);
+
+        Timer acquired = acquireTimer(registry, name, "success");
+        Timer failed = acquireTimer(registry, name, "failure");
+        pool.setAcquireListener((nanos, success) ->
+                (success ? acquired : failed).record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    @Bean
+    public MeterBinder productCacheMetrics(ProductCache cache){
+        return registry -> {
+            FunctionCounter.builder("product.cache.hits", cache, c -> c.getStats().getHits()).register(registry);
+            FunctionCounter.builder("product.cache.misses", cache, c -> c.getStats().getMisses()).register(registry);
+            FunctionCounter.builder("product.cache.evictions", cache, c -> c.getStats().getEvictions())
+                    .register(registry);
+            Gauge.builder("product.cache.size", cache, c -> c.getStats().getSize()).register(registry);
+        };
+    }
+
+    // Signed login tokens - nothing is published for opaque tokens, whose store has its own /tokenStats endpoint
+    @Bean
+    public MeterBinder authTokenMetrics(AuthTokenService tokenService){
+        return registry -> {
+            if(!(tokenService instanceof SignedTokenService signed)){
+                return;
+            }
+            FunctionCounter.builder("auth.tokens.issued", signed, SignedTokenService::getIssued).register(registry);
+            FunctionCounter.builder("auth.tokens.rejected", signed, SignedTokenService::getRejected)
+                    .description("Tokens refused for a bad format, unknown key, wrong signature or revocation")
+                    .register(registry);
+            FunctionCounter.builder("auth.tokens.expired", signed, SignedTokenService::getExpired).register(registry);
+            Gauge.builder("auth.tokens.revoked", signed, SignedTokenService::getRevokedCount)
+                    .description("Revoked tokens remembered until they expire")
+                    .register(registry);
+        };
+    }
+
+    // Lookups that ran a query versus lookups that shared a query already in flight for the same key
+    @Bean
+    public MeterBinder productLookupMetrics(ProductService productService){
+        return registry -> {
+            bindSingleFlight(registry, "byCode", productService.getProductLoads());
+            bindSingleFlight(registry, "all", productService.getAllProductLoads());
+
+            BatchLoader<?, ?, ?> batcher = productService.getProductBatcher();
+            if(batcher != null){
+                FunctionCounter.builder("product.lookups.batches", batcher, BatchLoader::getBatches)
+                        .description("Batched queries run for single-product cache misses")
+                        .register(registry);
+                FunctionCounter.builder("product.lookups.batched.keys", batcher, BatchLoader::getKeysLoaded)
+                        .description("Product codes looked up by batched queries")
+                        .register(registry);
+            }
+        };
+    }
+
+    private static void bindSingleFlight(MeterRegistry registry, String lookup, SingleFlight<?, ?> singleFlight){
+        FunctionCounter.builder("product.lookups.loads", singleFlight, SingleFlight::getLoads)
+                .description("Product lookups that queried the database")
+                .tag("lookup", lookup)
+                .register(registry);
+        FunctionCounter.builder("product.lookups.collapsed", singleFlight, SingleFlight::getCollapsed)
+                .description("Product lookups that shared another request's in-flight query")
+                .tag("lookup", lookup)
+                .register(registry);
+    }
+
+    private static Timer acquireTimer(MeterRegistry registry, String pool, String outcome){
+        return Timer.builder("db.pool.acquire")
+                .description("Time spent waiting to borrow a connection")
+                .tag("pool", pool)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,125 @@
+package web_patterns.samplespring2025.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import web_patterns.samplespring2025.entities.CustomerValue;
+import web_patterns.samplespring2025.entities.MonthlySales;
+import web_patterns.samplespring2025.entities.ProductLineSales;
+import web_patterns.samplespring2025.entities.ProductSales;
+import web_patterns.samplespring2025.entities.SalesSummary;
+import web_patterns.samplespring2025.services.AnalyticsNotReadyException;
+import web_patterns.samplespring2025.services.SalesAnalyticsService;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Locale;
+
+// Sales figures over orders/orderdetails - served from SalesAnalyticsService's in-memory totals, never the database
+// Every response carries an ETag that changes with the figures, so a dashboard polling for changes mostly gets 304s
+@Slf4j
+@RestController
+@RequestMapping("/api/analytics/")
+public class AnalyticsController {
+    private SalesAnalyticsService analyticsService;
+
+    public AnalyticsController(SalesAnalyticsService analyticsService){
+        this.analyticsService = analyticsService;
+    }
+
+    @GetMapping(path="/summary", produces="application/json")
+    public SalesSummary getSummary(ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        return analyticsService.getSummary();
+    }
+
+    // Best sellers - by=revenue (default) or by=quantity
+    @GetMapping(path="/products/top", produces="application/json")
+    public List<ProductSales> getTopProducts(@RequestParam(defaultValue = "revenue") String by,
+                                             @RequestParam(defaultValue = "10") int limit,
+                                             ServletWebRequest request){
+        SalesAnalyticsService.Ranking ranking;
+        try {
+            ranking = SalesAnalyticsService.Ranking.valueOf(by.toUpperCase(Locale.ROOT));
+        }catch(IllegalArgumentException e){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be revenue or quantity");
+        }
+        if(notModified(request)){
+            return null;
+        }
+        return analyticsService.getTopProducts(ranking, limit);
+    }
+
+    @GetMapping(path="/productLines", produces="application/json")
+    public List<ProductLineSales> getProductLineSales(ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        return analyticsService.getProductLineSales();
+    }
+
+    // Revenue per month, optionally limited to a range - e.g. /monthly?from=2004-01&to=2004-12
+    @GetMapping(path="/monthly", produces="application/json")
+    public List<MonthlySales> getMonthlySales(@RequestParam(required = false) YearMonth from,
+                                              @RequestParam(required = false) YearMonth to,
+                                              ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        return analyticsService.getMonthlySales(from, to);
+    }
+
+    // Customers ranked by lifetime value
+    @GetMapping(path="/customers/top", produces="application/json")
+    public List<CustomerValue> getTopCustomers(@RequestParam(defaultValue = "10") int limit,
+                                               ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        return analyticsService.getTopCustomers(limit);
+    }
+
+    @GetMapping(path="/customers/{customerNumber}", produces="application/json")
+    public CustomerValue getCustomerValue(@PathVariable int customerNumber, ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        CustomerValue value = analyticsService.getCustomerValue(customerNumber);
+        if(value == null){
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "No orders for customer " + customerNumber
+            );
+        }
+        return value;
+    }
+
+    // Looked up before any header is set - if the figures aren't built yet, notBuilt() answers instead
+    private boolean notModified(ServletWebRequest request){
+        String etag = analyticsService.getETag();
+        if(request.getResponse() != null){
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        return request.checkNotModified(etag);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // The figures haven't been built yet (e.g. the database was unavailable at startup)
+    @ExceptionHandler(AnalyticsNotReadyException.class)
+    public ResponseEntity<String> notBuilt(AnalyticsNotReadyException e) {
+        log.warn("Analytics request refused - {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(analyticsService.getRefreshSeconds()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .body(e.getMessage());
+    }
+}
@@ -1,33 +1,44 @@
 package web_patterns.samplespring2025.controllers;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import web_patterns.samplespring2025.entities.TokenStoreStats;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
 import web_patterns.samplespring2025.services.AuthService;
+import web_patterns.samplespring2025.services.AuthTokenService;
+import web_patterns.samplespring2025.services.RevocationListFullException;
+import web_patterns.samplespring2025.services.TokenStore;
 
 import java.sql.SQLException;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/auth/")
 public class AuthController {
-    // Map to store authentication tokens with usernames
-    private static final Map<String, String> tokenMap = new ConcurrentHashMap<>();
+    // Seconds a client is told to wait when logins are being rejected
+    private static final String RETRY_AFTER_SECONDS = "1";
 
     // Exception error codes for differentiation between exception issues
     private static final int DUPLICATE_KEY_ERROR_CODE = 1062;
     private static final int FOREIGN_KEY_CONSTRAINT_FAILS = 1452;
 
     private AuthService authService;
+    // Issues and checks login tokens - opaque tokens in the token store, or signed tokens (auth.token.mode)
+    private AuthTokenService tokenService;
+    // Stores opaque tokens with usernames - tokens expire and the store is size-capped
+    private TokenStore tokenStore;
 
-    public AuthController(AuthService authService){
+    public AuthController(AuthService authService, AuthTokenService tokenService, TokenStore tokenStore){
         // Don't create it yourself - facilitate auto-wiring
         // Assume a service class will be provided by spring boot as a parameter
         this.authService = authService;
+        this.tokenService = tokenService;
+        this.tokenStore = tokenStore;
     }
 
     @PostMapping(path="/login", produces="application/json")
@@ -35,9 +46,7 @@ public class AuthController {
         try {
             boolean loggedIn = authService.login(username, password);
             if(loggedIn){
-                String token = UUID.randomUUID().toString();
-                tokenMap.put(token, username);
-                return token;
+                return tokenService.issue(username);
             }
             log.info("Failed login attempt for {}", username);
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
@@ -60,10 +69,49 @@ public class AuthController {
     public String secure(@RequestHeader("Authorization") String header) {
         String token = header.replace("Bearer ", "");
 
-        if (tokenMap.containsKey(token)) {
-            return "Hello " + tokenMap.get(token) + ", you're authenticated!";
+        String username = tokenService.validate(token);
+        if (username != null) {
+            return "Hello " + username + ", you're authenticated!";
         }
 
         throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
     }
+
+    @PostMapping("/logout")
+    public void logout(@RequestHeader("Authorization") String header) {
+        tokenService.revoke(header.replace("Bearer ", ""));
+    }
+
+    // Size and expiry counters for the token store (opaque tokens only)
+    @GetMapping(path="/tokenStats", produces="application/json")
+    public TokenStoreStats tokenStats() {
+        return tokenStore.getStats();
+    }
+
+    // Too many logins are already waiting for password verification - fail fast rather than queue up
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> loginsSaturated(RejectedExecutionException e) {
+        log.info("Login rejected - password hashing at capacity: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body("Too many login attempts in progress, please retry");
+    }
+
+    // Signed tokens only - too many logged-out tokens are still unexpired to remember another. The token stays valid,
+    // so the client is told the logout failed rather than being logged out in name only.
+    @ExceptionHandler(RevocationListFullException.class)
+    public ResponseEntity<String> revocationListFull(RevocationListFullException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body("Logout could not be completed, please retry");
+    }
+
+    // The database has been failing and calls to it are being refused (circuit breaker open) - fail fast with 503
+    @ExceptionHandler(DatabaseUnavailableException.class)
+    public ResponseEntity<String> databaseUnavailable(DatabaseUnavailableException e) {
+        log.warn("Request refused - {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body("Database temporarily unavailable, please retry");
+    }
 }
@@ -1,14 +1,40 @@
 package web_patterns.samplespring2025.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import web_patterns.samplespring2025.entities.CacheStats;
+import web_patterns.samplespring2025.entities.CatalogSnapshot;
+import web_patterns.samplespring2025.entities.FacetedProductPage;
+import web_patterns.samplespring2025.entities.ImportReport;
 import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductBatch;
+import web_patterns.samplespring2025.entities.ProductFilter;
+import web_patterns.samplespring2025.entities.ProductPage;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.entities.ProductSummaryPage;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
+import web_patterns.samplespring2025.services.CatalogSnapshotService;
+import web_patterns.samplespring2025.services.CatalogVersion;
+import web_patterns.samplespring2025.services.ProductSearchIndex;
 import web_patterns.samplespring2025.services.ProductService;
+import web_patterns.samplespring2025.utils.JsonArrayReader;
+import web_patterns.samplespring2025.utils.NdjsonReader;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @RestController
@@ -19,15 +45,23 @@ public class ProductController {
     private static final int FOREIGN_KEY_CONSTRAINT_FAILS = 1452;
 
     private ProductService productService;
+    private CatalogSnapshotService catalogSnapshotService;
+    private ObjectMapper objectMapper;
 
-    public ProductController(ProductService productService){
+    public ProductController(ProductService productService, CatalogSnapshotService catalogSnapshotService,
+                             ObjectMapper objectMapper){
         // Don't create it yourself - facilitate auto-wiring
         // Assume a service class will be provided by spring boot as a parameter
         this.productService = productService;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(path="/{productCode}", produces="application/json")
-    public Product getProduct(@PathVariable String productCode){
+    public Product getProduct(@PathVariable String productCode, ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
         try {
             Product p = productService.getProductByCode(productCode);
             if(p == null){
@@ -37,6 +71,7 @@ public class ProductController {
             }
             return p;
         }catch (SQLException e){
+            doNotStore(request);
             log.error("product with code \"{}\" could not be retrieved. Database error occurred: {}", productCode,
                     e.getMessage());
             throw new ResponseStatusException(
@@ -45,11 +80,82 @@ public class ProductController {
         }
     }
 
+    // Conditional GET for catalog reads: responses carry an ETag and Last-Modified from the catalog version, and a
+    // client sending a matching If-None-Match (or If-Modified-Since) gets a 304 before the cache, database or JSON
+    // serialization is touched. no-cache lets browsers and the CDN keep a copy but revalidate it on each use.
+    // Last-Modified is left off during the second of a change (see CatalogVersion).
+    private boolean notModified(ServletWebRequest request){
+        if(request.getResponse() != null){
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        CatalogVersion.Stamp version = productService.getCatalogVersion().current();
+        return request.checkNotModified(version.etag(), version.lastModified());
+    }
+
+    // A database error response already carries the catalog ETag - stop it being stored, or a client revalidating
+    // it would be told (304) that the error is still current
+    private static void doNotStore(ServletWebRequest request){
+        if(request.getResponse() != null){
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        }
+    }
+
+    // Look up many products in one request (e.g. every line of a cart) - GET /batch?codes=S10_1678,S10_1949
+    // or POST a JSON array of codes for longer lists. Codes that don't exist are listed in missing.
+    @GetMapping(path="/batch", produces="application/json")
+    public ProductBatch getProductsBatch(@RequestParam List<String> codes){
+        return lookupBatch(codes);
+    }
+
+    @PostMapping(path="/batch", consumes="application/json", produces="application/json")
+    public ProductBatch postProductsBatch(@RequestBody List<String> codes){
+        return lookupBatch(codes);
+    }
+
+    private ProductBatch lookupBatch(List<String> codes){
+        try {
+            return productService.getProductsByCodes(codes);
+        }catch (IllegalArgumentException e){
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, e.getMessage()
+            );
+        }catch (SQLException e){
+            log.error("Product batch could not be retrieved. Database error occurred: {}",
+                    e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    // Served from the pre-serialized catalog snapshot when it is current (gzip-encoded if the client accepts it),
+    // otherwise the product list is serialized as normal
     @GetMapping(path="/getAllProducts", produces="application/json")
-    public List<Product> getProducts(){
+    public ResponseEntity<?> getProducts(ServletWebRequest request,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                         String acceptEncoding){
+        if(notModified(request)){
+            return null;
+        }
+
+        CatalogSnapshot snapshot = catalogSnapshotService.getCurrent();
+        if(snapshot != null){
+            boolean gzip = acceptsGzip(acceptEncoding);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if(gzip){
+                response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return response.body(gzip ? snapshot.getGzip() : snapshot.getJson());
+        }
+
         try {
-            return productService.getAllProducts();
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(productService.getAllProducts());
         }catch (SQLException e){
+            doNotStore(request);
             log.error("Product list could not be retrieved. Database error occurred: {}",
                     e.getMessage());
             throw new ResponseStatusException(
@@ -58,10 +164,95 @@ public class ProductController {
         }
     }
 
+    // True unless the client didn't list gzip (or gave it q=0)
+    private static boolean acceptsGzip(String acceptEncoding){
+        if(acceptEncoding == null){
+            return false;
+        }
+        for(String coding : acceptEncoding.split(",")){
+            String[] parts = coding.trim().split(";");
+            if(parts[0].trim().equalsIgnoreCase("gzip")){
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Paginated alternative to getAllProducts - pass the returned nextCursor to get the following page
+    @GetMapping(path="/page", produces="application/json")
+    public ProductPage getProductsPage(@RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "20") int limit){
+        try {
+            return productService.getProductsPage(cursor, limit);
+        }catch (IllegalArgumentException e){
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, e.getMessage()
+            );
+        }catch (SQLException e){
+            log.error("Product page could not be retrieved. Database error occurred: {}",
+                    e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    // Summary versions of the list endpoints - every field except productDescription, for list and search views
+    @GetMapping(path="/summaries", produces="application/json")
+    public List<ProductSummary> getProductSummaries(ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        try {
+            return productService.getAllProductSummaries();
+        }catch (SQLException e){
+            doNotStore(request);
+            log.error("Product summary list could not be retrieved. Database error occurred: {}",
+                    e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    @GetMapping(path="/summaries/page", produces="application/json")
+    public ProductSummaryPage getProductSummariesPage(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "20") int limit){
+        try {
+            return productService.getProductSummariesPage(cursor, limit);
+        }catch (IllegalArgumentException e){
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, e.getMessage()
+            );
+        }catch (SQLException e){
+            log.error("Product summary page could not be retrieved. Database error occurred: {}",
+                    e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    @GetMapping(path="/summaries/getByKeyword", produces="application/json")
+    public List<ProductSummary> getSummariesByKeyword(@RequestParam String keyword,
+                                                      @RequestParam(defaultValue = "substring") String mode){
+        try {
+            return productService.getProductSummariesByKeyword(keyword, parseMatchMode(mode));
+        }catch (SQLException e){
+            log.error("Product summary list could not be retrieved. Database error occurred: {}",
+                    e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    // mode is substring (default - same results as a LIKE '%keyword%' search), prefix or word
     @GetMapping(path="/getByKeyword", produces="application/json")
-    public List<Product> getByKeyword(@RequestParam String keyword){
+    public List<Product> getByKeyword(@RequestParam String keyword,
+                                      @RequestParam(defaultValue = "substring") String mode){
         try {
-            return productService.getProductsByKeyword(keyword);
+            return productService.getProductsByKeyword(keyword, parseMatchMode(mode));
         }catch (SQLException e){
             log.error("Product list could not be retrieved. Database error occurred: {}",
                     e.getMessage());
@@ -71,6 +262,62 @@ public class ProductController {
         }
     }
 
+    // Faceted filter served from the in-memory facet index, with counts per line, vendor and scale, e.g.
+    // /filter?productLine=Classic Cars,Vintage Cars&maxBuyPrice=50&minStock=1000
+    // Several values for one field (comma-separated or repeated) match any of them; bounds are inclusive
+    @GetMapping(path="/filter", produces="application/json")
+    public FacetedProductPage filterProducts(@RequestParam(required = false) List<String> productLine,
+                                             @RequestParam(required = false) List<String> productVendor,
+                                             @RequestParam(required = false) List<String> productScale,
+                                             @RequestParam(required = false) Double minBuyPrice,
+                                             @RequestParam(required = false) Double maxBuyPrice,
+                                             @RequestParam(required = false) Double minMsrp,
+                                             @RequestParam(required = false) Double maxMsrp,
+                                             @RequestParam(required = false) Integer minStock,
+                                             @RequestParam(required = false) Integer maxStock,
+                                             @RequestParam(defaultValue = "0") int offset,
+                                             @RequestParam(defaultValue = "20") int limit,
+                                             ServletWebRequest request){
+        if(notModified(request)){
+            return null;
+        }
+        ProductFilter filter = ProductFilter.builder()
+                .productLines(productLine == null ? Set.of() : new HashSet<>(productLine))
+                .productVendors(productVendor == null ? Set.of() : new HashSet<>(productVendor))
+                .productScales(productScale == null ? Set.of() : new HashSet<>(productScale))
+                .minBuyPrice(minBuyPrice)
+                .maxBuyPrice(maxBuyPrice)
+                .minMsrp(minMsrp)
+                .maxMsrp(maxMsrp)
+                .minStock(minStock)
+                .maxStock(maxStock)
+                .build();
+        try {
+            return productService.filterProducts(filter, offset, limit);
+        }catch (IllegalArgumentException e){
+            doNotStore(request);
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, e.getMessage()
+            );
+        }catch (SQLException e){
+            doNotStore(request);
+            log.error("Product filter could not be run. Database error occurred: {}", e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Database error"
+            );
+        }
+    }
+
+    private static ProductSearchIndex.MatchMode parseMatchMode(String mode){
+        try {
+            return ProductSearchIndex.MatchMode.valueOf(mode.toUpperCase());
+        }catch (IllegalArgumentException e){
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "mode must be one of substring, prefix or word"
+            );
+        }
+    }
+
     @PostMapping(path="/add", produces="application/json")
     public boolean addProduct(@RequestBody Product product){
         try{
@@ -93,4 +340,50 @@ public class ProductController {
         }
     }
 
+    // Bulk import from a JSON array of products, read one element at a time
+    // Rows are validated and inserted in batches - the response reports the outcome of each row, including rows that
+    // could not be read (e.g. a missing field), which are INVALID rather than failing the whole request
+    @PostMapping(path="/bulk", consumes="application/json", produces="application/json")
+    public ImportReport bulkAddProducts(Reader body){
+        try {
+            return productService.importProducts(
+                    new JsonArrayReader<Product>(objectMapper.createParser(body), objectMapper.readerFor(Product.class)));
+        }catch (IOException | UncheckedIOException e){
+            log.error("Bulk import request body could not be read: {}", e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Request body could not be read"
+            );
+        }
+    }
+
+    // Bulk import from newline-delimited JSON (one product per line), read as a stream
+    @PostMapping(path="/bulk", consumes="application/x-ndjson", produces="application/json")
+    public ImportReport bulkAddProductsNdjson(Reader body){
+        try {
+            return productService.importProducts(
+                    new NdjsonReader<Product>(new BufferedReader(body), objectMapper.readerFor(Product.class)));
+        }catch (UncheckedIOException e){
+            log.error("Bulk import request body could not be read: {}", e.getMessage());
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Request body could not be read"
+            );
+        }
+    }
+
+    // Hit/miss/eviction counters for the product cache - used to size product.cache.maxSize and ttl
+    @GetMapping(path="/cacheStats", produces="application/json")
+    public CacheStats getCacheStats(){
+        return productService.getCacheStats();
+    }
+
+    // The database has been failing and calls to it are being refused (circuit breaker open) - fail fast with 503
+    @ExceptionHandler(DatabaseUnavailableException.class)
+    public ResponseEntity<String> databaseUnavailable(DatabaseUnavailableException e, ServletWebRequest request) {
+        log.warn("Request refused - {}", e.getMessage());
+        doNotStore(request);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body("Database temporarily unavailable, please retry");
+    }
+
 }
@@ -0,0 +1,18 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class CacheStats {
+    private final boolean enabled;
+    private final String policy;
+    private final int maxSize;
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+}
@@ -0,0 +1,18 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// The full product list serialized to JSON once, with a gzip copy, for the catalog version it was built from
+// The byte arrays are never modified after the snapshot is built
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString(onlyExplicitlyIncluded = true)
+public class CatalogSnapshot {
+    @ToString.Include
+    private final long version;
+    @ToString.Include
+    private final int productCount;
+    private final byte[] json;
+    private final byte[] gzip;
+}
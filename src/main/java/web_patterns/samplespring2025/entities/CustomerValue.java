@@ -0,0 +1,19 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+// A customer's lifetime value - the revenue of every order they have placed
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class CustomerValue {
+    private final int customerNumber;
+    private final String customerName;
+    private final int orders;
+    private final double revenue;
+    private final LocalDate firstOrderDate;
+    private final LocalDate lastOrderDate;
+}
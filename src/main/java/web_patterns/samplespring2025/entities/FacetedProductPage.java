@@ -0,0 +1,22 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.Map;
+
+// One page of the products matching a ProductFilter, with facet counts for narrowing it further.
+// facets maps each field (productLine, productVendor, productScale) to the number of products for each of its values.
+// The counts for a field apply every criterion except the one on that field, so they show what choosing a different
+// or additional value would return. ranges gives the min/max buyPrice, msrp and quantityInStock of the matches.
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class FacetedProductPage {
+    private final int total;
+    private final int offset;
+    private final List<ProductSummary> products;
+    private final Map<String, Map<String, Integer>> facets;
+    private final Map<String, ValueRange> ranges;
+}
@@ -0,0 +1,19 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ImportReport {
+    private final int total;
+    private final int inserted;
+    private final int duplicates;
+    private final int foreignKeyFailures;
+    private final int invalid;
+    private final int failed;
+    private final List<ImportResult> results;
+}
@@ -0,0 +1,15 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// Result for one row of a bulk import - index is the row's position in the request (0-based)
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ImportResult {
+    private final int index;
+    private final String productCode;
+    private final ImportStatus status;
+    private final String message;
+}
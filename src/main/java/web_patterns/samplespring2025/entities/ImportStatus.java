@@ -0,0 +1,14 @@
+package web_patterns.samplespring2025.entities;
+
+// Outcome of importing one row in a bulk product import
+public enum ImportStatus {
+    INSERTED,
+    // Product code already exists (MySQL error 1062)
+    DUPLICATE,
+    // Product line does not exist (MySQL error 1452)
+    FOREIGN_KEY_FAILURE,
+    // Row could not be parsed or failed validation - it was never sent to the database
+    INVALID,
+    // Any other database error
+    FAILED
+}
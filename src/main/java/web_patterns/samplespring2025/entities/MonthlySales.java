@@ -0,0 +1,17 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.time.YearMonth;
+
+// Sales for the orders placed in one calendar month (by orderDate)
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class MonthlySales {
+    private final YearMonth month;
+    private final int orders;
+    private final long quantity;
+    private final double revenue;
+}
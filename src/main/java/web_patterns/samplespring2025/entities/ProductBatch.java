@@ -0,0 +1,15 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.List;
+
+// Result of a multi-product lookup - the products found (in the order requested) and the codes that don't exist
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductBatch {
+    private final List<Product> products;
+    private final List<String> missing;
+}
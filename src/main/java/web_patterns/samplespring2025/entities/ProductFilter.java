@@ -0,0 +1,26 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.Set;
+
+// Criteria for the faceted product filter. A product must match every criterion that is set; within a set of values
+// (e.g. productLines) any one value matches. Empty sets and null bounds are ignored, and bounds are inclusive.
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductFilter {
+    @Builder.Default
+    private final Set<String> productLines = Set.of();
+    @Builder.Default
+    private final Set<String> productVendors = Set.of();
+    @Builder.Default
+    private final Set<String> productScales = Set.of();
+    private final Double minBuyPrice;
+    private final Double maxBuyPrice;
+    private final Double minMsrp;
+    private final Double maxMsrp;
+    private final Integer minStock;
+    private final Integer maxStock;
+}
@@ -0,0 +1,15 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// Sales for one product line - orders counts each order that included at least one product from the line
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductLineSales {
+    private final String productLine;
+    private final int orders;
+    private final long quantity;
+    private final double revenue;
+}
@@ -0,0 +1,16 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.List;
+
+// One page of a keyset-paginated product listing
+// nextCursor is passed back to get the following page, and is null on the last page
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductPage {
+    private final List<Product> products;
+    private final String nextCursor;
+}
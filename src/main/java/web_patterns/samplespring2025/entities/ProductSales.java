@@ -0,0 +1,17 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// Units sold and revenue (quantityOrdered * priceEach) for one product across every order
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductSales {
+    private final String productCode;
+    private final String productName;
+    private final String productLine;
+    private final int orders;
+    private final long quantity;
+    private final double revenue;
+}
@@ -0,0 +1,27 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// A product without its description - used by list and search views, where the description (a TEXT column that
+// makes up most of each row) isn't shown. Use the single product endpoint to get the full Product.
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class ProductSummary {
+    @EqualsAndHashCode.Include
+    private final String productCode;
+    private final String productName;
+    private final String productLine;
+    private final String productScale;
+    private final String productVendor;
+    private final int quantityInStock;
+    private final double buyPrice;
+    private final double msrp;
+
+    public static ProductSummary from(Product p){
+        return new ProductSummary(p.getProductCode(), p.getProductName(), p.getProductLine(), p.getProductScale(),
+                p.getProductVendor(), p.getQuantityInStock(), p.getBuyPrice(), p.getMsrp());
+    }
+}
@@ -0,0 +1,15 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.util.List;
+
+// One page of a keyset-paginated product summary listing - cursors are interchangeable with ProductPage's
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ProductSummaryPage {
+    private final List<ProductSummary> products;
+    private final String nextCursor;
+}
@@ -0,0 +1,22 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+// One order line (orderdetails) with the order, customer and product details the sales analytics group by
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class SaleLine {
+    private final int orderNumber;
+    private final LocalDate orderDate;
+    private final int customerNumber;
+    private final String customerName;
+    private final String productCode;
+    private final String productName;
+    private final String productLine;
+    private final int quantityOrdered;
+    private final double priceEach;
+}
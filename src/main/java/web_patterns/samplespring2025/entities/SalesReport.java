@@ -0,0 +1,31 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+// Every sales analytics view, ranked and sorted once when the figures change so that each request only slices them
+// Nothing in a report is modified after it is built
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString(onlyExplicitlyIncluded = true)
+public class SalesReport {
+    @ToString.Include
+    private final SalesSummary summary;
+    // Highest first; ties are broken by product code
+    private final List<ProductSales> productsByRevenue;
+    private final List<ProductSales> productsByQuantity;
+    private final List<ProductLineSales> productLinesByRevenue;
+    private final NavigableMap<YearMonth, MonthlySales> months;
+    private final List<CustomerValue> customersByRevenue;
+    private final Map<Integer, CustomerValue> customers;
+
+    // Changes whenever the figures do - used as the ETag for analytics responses
+    public String etag(){
+        return "\"sales-" + summary.getLastOrderNumber() + "-" + summary.getUpdatedAt().toEpochMilli() + "\"";
+    }
+}
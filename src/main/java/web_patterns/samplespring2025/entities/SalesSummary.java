@@ -0,0 +1,24 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+import java.time.Instant;
+
+// Totals across every order, and how current the sales analytics are
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class SalesSummary {
+    private final int orders;
+    private final long lines;
+    private final long quantity;
+    private final double revenue;
+    private final int customers;
+    private final int products;
+    // Highest order number included - orders above it are picked up by the next refresh
+    private final int lastOrderNumber;
+    // When the figures were last rebuilt from a full scan, and when they last changed
+    private final Instant rebuiltAt;
+    private final Instant updatedAt;
+}
@@ -0,0 +1,18 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class TokenStoreStats {
+    private final int size;
+    private final int maxEntries;
+    private final long ttlSeconds;
+    private final boolean slidingExpiry;
+    private final long issued;
+    private final long expired;
+    private final long evicted;
+    private final long removed;
+}
@@ -0,0 +1,13 @@
+package web_patterns.samplespring2025.entities;
+
+import lombok.*;
+
+// Lowest and highest value of a numeric field across a set of products
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ValueRange {
+    private final double min;
+    private final double max;
+}
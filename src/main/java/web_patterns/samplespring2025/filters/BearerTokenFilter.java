@@ -0,0 +1,52 @@
+package web_patterns.samplespring2025.filters;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+import web_patterns.samplespring2025.services.AuthTokenService;
+
+import java.io.IOException;
+
+/**
+ * Requires a valid login token (Authorization: Bearer ...) on the requests it is mapped to - see the auth.filter.*
+ * entries in application.properties. Requests without one are answered 401 and never reach the controller.
+ * <p>
+ * The username the token was issued to is passed on as the USERNAME_ATTRIBUTE request attribute. With signed tokens
+ * (auth.token.mode=signed) the check is CPU only - no lookup of any kind.
+ */
+@Slf4j
+public class BearerTokenFilter extends OncePerRequestFilter {
+    public static final String USERNAME_ATTRIBUTE = "auth.username";
+    private static final String BEARER = "Bearer ";
+
+    private final AuthTokenService tokenService;
+
+    public BearerTokenFilter(AuthTokenService tokenService){
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if(header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())){
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        String username = tokenService.validate(header.substring(BEARER.length()).trim());
+        if(username == null){
+            log.debug("Rejected token for {} {}", request.getMethod(), request.getRequestURI());
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        request.setAttribute(USERNAME_ATTRIBUTE, username);
+        chain.doFilter(request, response);
+    }
+}
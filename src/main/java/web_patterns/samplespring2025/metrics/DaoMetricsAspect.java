@@ -0,0 +1,100 @@
+package web_patterns.samplespring2025.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every ProductDao, UserDao and SalesDao call and records how many rows each query mapped.
+ * <p>
+ * Meters published:
+ * <ul>
+ *     <li>dao.calls - timer tagged with dao, method, outcome (success/error) and code (the SQL error code, or none)</li>
+ *     <li>dao.rows.mapped - rows returned per call, tagged with dao and method (only for methods returning
+ *     entities or lists of them)</li>
+ * </ul>
+ * Meters for successful calls are looked up once and cached, so the per-call overhead is a map lookup and two
+ * clock reads. Percentile histograms are published so percentiles are computed by the metrics server, not here.
+ */
+@Aspect
+@Component
+public class DaoMetricsAspect {
+    private final MeterRegistry registry;
+    private final Map<String, Timer> successTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+
+    public DaoMetricsAspect(MeterRegistry registry){
+        this.registry = registry;
+    }
+
+    @Around("(execution(public * web_patterns.samplespring2025.persistence.ProductDao+.*(..))" +
+            " || execution(public * web_patterns.samplespring2025.persistence.UserDao+.*(..))" +
+            " || execution(public * web_patterns.samplespring2025.persistence.SalesDao+.*(..)))" +
+            " && !execution(* *.closeConnection())")
+    public Object timeDaoCall(ProceedingJoinPoint pjp) throws Throwable {
+        String dao = pjp.getSignature().getDeclaringType().getSimpleName();
+        String method = pjp.getSignature().getName();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = pjp.proceed();
+        }catch(SQLException e){
+            long elapsed = System.nanoTime() - start;
+            errorTimer(dao, method, String.valueOf(e.getErrorCode())).record(elapsed, TimeUnit.NANOSECONDS);
+            throw e;
+        }catch(RuntimeException e){
+            errorTimer(dao, method, "none").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+
+        String key = dao + "." + method;
+        successTimers.computeIfAbsent(key, k -> timer(dao, method, "success", "none"))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        recordRows(key, dao, method, result);
+        return result;
+    }
+
+    private void recordRows(String key, String dao, String method, Object result){
+        int rows;
+        if(result instanceof Collection<?> collection){
+            rows = collection.size();
+        }else if(result != null && result.getClass().getPackageName().endsWith(".entities")){
+            rows = 1;
+        }else{
+            return;
+        }
+        rowSummaries.computeIfAbsent(key, k -> DistributionSummary.builder("dao.rows.mapped")
+                        .description("Rows mapped per DAO call")
+                        .tag("dao", dao)
+                        .tag("method", method)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(rows);
+    }
+
+    private Timer errorTimer(String dao, String method, String code){
+        // Errors are rare, so the registry's own lookup is fine here
+        return timer(dao, method, "error", code);
+    }
+
+    private Timer timer(String dao, String method, String outcome, String code){
+        return Timer.builder("dao.calls")
+                .description("Time taken by DAO methods")
+                .tag("dao", dao)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .tag("code", code)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,186 @@
+package web_patterns.samplespring2025.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Wraps a Connector so that, once the database is failing, requests are refused straight away instead of each one
+ * waiting out the connect or pool timeout.
+ * <ul>
+ *     <li>CLOSED - borrows go to the wrapped connector. failureThreshold failed borrows in a row open the breaker.</li>
+ *     <li>OPEN - every borrow throws DatabaseUnavailableException without touching the database.</li>
+ *     <li>HALF_OPEN - after openMs a background thread borrows one connection as a probe (requests are still
+ *     refused while it runs). If it succeeds the breaker closes, otherwise it stays open for another openMs.</li>
+ * </ul>
+ * Only borrows are watched: a failed borrow is the wrapped connector returning null because the database couldn't be
+ * reached or a connection to it failed validation. A borrow that found no pooled connection free within the acquire
+ * timeout isn't counted - that is a busy pool, not a failing database, and refusing every request would only hide it.
+ * Failing queries on a connection that was borrowed successfully are left to query.timeoutSeconds.
+ */
+@Slf4j
+public class CircuitBreakerConnector implements Connector, AutoCloseable {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Connector delegate;
+    private final int failureThreshold;
+    private final long openMs;
+    private final ScheduledExecutorService prober;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // System.nanoTime() of the next probe while the breaker is open
+    private volatile long nextProbeAt;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    /**
+     * @param delegate The connector being protected
+     * @param failureThreshold Failed connects in a row that open the breaker
+     * @param openMs How long the breaker stays open before (and between) background probes
+     */
+    public CircuitBreakerConnector(Connector delegate, int failureThreshold, long openMs){
+        if(failureThreshold < 1 || openMs < 1){
+            throw new IllegalArgumentException("Failure threshold and open time must both be at least 1");
+        }
+        this.delegate = delegate;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-circuit-breaker-probe");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public Connection getConnection(){
+        return borrow(delegate::getConnection);
+    }
+
+    @Override
+    public Connection getReadConnection(){
+        return borrow(delegate::getReadConnection);
+    }
+
+    @Override
+    public Connection getPrimaryReadConnection(){
+        return borrow(delegate::getPrimaryReadConnection);
+    }
+
+    @Override
+    public void freeConnection(){
+        delegate.freeConnection();
+    }
+
+    @Override
+    public void applyFetchSize(Statement statement) throws SQLException {
+        delegate.applyFetchSize(statement);
+    }
+
+    @Override
+    public void applyQueryTimeout(Statement statement) throws SQLException {
+        delegate.applyQueryTimeout(statement);
+    }
+
+    private Connection borrow(Supplier<Connection> borrow){
+        if(state.get() != State.CLOSED){
+            rejected.increment();
+            throw new DatabaseUnavailableException("Database unavailable - circuit breaker is open",
+                    getRetryAfterSeconds());
+        }
+        Connection conn = borrow.get();
+        if(conn == null){
+            if(delegate.lastBorrowFailedToConnect()){
+                recordFailure();
+            }
+        }else if(consecutiveFailures.get() != 0){
+            // Only write when there is something to reset, so the healthy path stays read-only
+            consecutiveFailures.set(0);
+        }
+        return conn;
+    }
+
+    private void recordFailure(){
+        if(consecutiveFailures.incrementAndGet() >= failureThreshold && state.compareAndSet(State.CLOSED, State.OPEN)){
+            opened.increment();
+            log.error("recordFailure() - {} failed connection attempts in a row, refusing database calls for {}ms",
+                    failureThreshold, openMs);
+            scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe(){
+        nextProbeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMs);
+        try {
+            prober.schedule(this::probe, openMs, TimeUnit.MILLISECONDS);
+        }catch(RuntimeException e){
+            // Shut down - stay open
+            log.warn("scheduleProbe() - Probe could not be scheduled: {}", e.getMessage());
+        }
+    }
+
+    // Runs on the probe thread - borrow and give back one connection to see if the database is back
+    private void probe(){
+        state.set(State.HALF_OPEN);
+        boolean healthy = false;
+        try {
+            healthy = delegate.isReachable();
+        }catch(RuntimeException e){
+            log.error("probe() - Probe failed: {}", e.getMessage());
+        }
+
+        if(healthy){
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+            log.info("probe() - Database reachable again, circuit breaker closed");
+        }else{
+            state.set(State.OPEN);
+            scheduleProbe();
+        }
+    }
+
+    public State getState(){
+        return state.get();
+    }
+
+    // Seconds until the next probe (at least 1) - 0 when the breaker is closed
+    public long getRetryAfterSeconds(){
+        if(state.get() == State.CLOSED){
+            return 0;
+        }
+        long remaining = nextProbeAt - System.nanoTime();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    // Borrows refused because the breaker was open
+    public long getRejected(){
+        return rejected.sum();
+    }
+
+    // Times the breaker has opened
+    public long getOpened(){
+        return opened.sum();
+    }
+
+    public Connector getDelegate(){
+        return delegate;
+    }
+
+    @Override
+    public void close() throws Exception {
+        prober.shutdownNow();
+        if(delegate instanceof AutoCloseable closeable){
+            closeable.close();
+        }
+    }
+}
@@ -1,8 +1,51 @@
 package web_patterns.samplespring2025.persistence;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 
+// Connections are borrowed per thread: every successful getConnection() must be matched by a
+// freeConnection() from the same thread once the caller is finished with it (use a finally block)
 public interface Connector {
     public Connection getConnection();
     public void freeConnection();
+
+    // Borrow a connection for a read-only query - it may come from a read replica, so never write through it.
+    // Freed with freeConnection() like any other borrow. Connectors without replicas use their one database.
+    public default Connection getReadConnection(){
+        return getConnection();
+    }
+
+    // Borrow a connection for a read-only query that must see every committed write, so never from a read replica
+    // (which may be behind). Unlike getConnection() it doesn't count as a write (see RoutingConnector).
+    public default Connection getPrimaryReadConnection(){
+        return getConnection();
+    }
+
+    // Asked after a borrow by this thread returned null: true when the database couldn't be reached (connecting to it or
+    // validating a connection failed), false when the database may be fine but no connection was free in time (e.g. an
+    // exhausted pool). Connectors that always open a fresh connection have only the first kind of failure.
+    public default boolean lastBorrowFailedToConnect(){
+        return true;
+    }
+
+    // Borrows and gives back one connection to check the database can be reached. Unlike a getConnection() made by a
+    // caller, the check doesn't count as a write (see RoutingConnector).
+    public default boolean isReachable(){
+        if(getConnection() == null){
+            return false;
+        }
+        freeConnection();
+        return true;
+    }
+
+    // Called by DAO methods that read large results row by row, so the driver fetches rows in chunks instead of
+    // loading the whole result into memory. The default leaves the driver's own fetch behaviour unchanged.
+    public default void applyFetchSize(Statement statement) throws SQLException {
+    }
+
+    // Called by DAO methods on every statement, so a query against a slow or hung database is cancelled after
+    // query.timeoutSeconds instead of holding the request and its connection indefinitely. The default sets no limit.
+    public default void applyQueryTimeout(Statement statement) throws SQLException {
+    }
 }
@@ -0,0 +1,77 @@
+package web_patterns.samplespring2025.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+@Slf4j
+public class ConnectorProperties {
+    // Property that selects which Connector implementation ConnectorConfig builds
+    public static final String CONNECTOR_TYPE = "connector.type";
+    public static final String TYPE_POOLED = "pooled";
+    public static final String TYPE_SIMPLE = "simple";
+    public static final String TYPE_ROUTING = "routing";
+    // Routing connector settings - replica.urls is a comma-separated list used in place of url for each replica
+    public static final String REPLICA_URLS = "replica.urls";
+    public static final String REPLICA_EJECT_MS = "replica.ejectMs";
+    public static final String REPLICA_PIN_MS = "replica.readAfterWritePinMs";
+    // Rows fetched per round trip by streaming reads (0 = the driver's default, -1 = stream row by row)
+    // MySQL ignores positive sizes unless useCursorFetch=true is in the URL - -1 is its streaming mode instead
+    public static final String FETCH_SIZE = "query.fetchSize";
+    // Seconds a statement may run before the driver cancels it (0 = no limit)
+    public static final String QUERY_TIMEOUT_SECONDS = "query.timeoutSeconds";
+    // Circuit breaker around the connector - see CircuitBreakerConnector
+    public static final String BREAKER_ENABLED = "breaker.enabled";
+    public static final String BREAKER_FAILURE_THRESHOLD = "breaker.failureThreshold";
+    public static final String BREAKER_OPEN_MS = "breaker.openMs";
+
+    /**
+     * Loads the key-value pairs from a properties file on the classpath.
+     * The file is read as a classpath stream, so this also works when the application is packaged as a jar.
+     * @param propertiesFilename The classpath location of the properties file, e.g. properties/database.properties
+     * @return The loaded properties. If the file could not be found or read, an empty Properties object is
+     * returned and the problem is logged (the connectors then fall back to their default values).
+     */
+    public static Properties load(String propertiesFilename){
+        Properties properties = new Properties();
+        try(InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(propertiesFilename)) {
+            if(in == null){
+                log.error("Properties file \"{}\" could not be found on the classpath", propertiesFilename);
+                return properties;
+            }
+            properties.load(in);
+        }catch(IOException e){
+            log.error("An exception occurred when attempting to load properties from \"{}\": {}",
+                    propertiesFilename, e.getMessage());
+        }
+        return properties;
+    }
+
+    public static int getInt(Properties properties, String key, int defaultValue){
+        String value = properties.getProperty(key);
+        if(value == null || value.isBlank()){
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        }catch(NumberFormatException e){
+            log.error("Property \"{}\" has non-numeric value \"{}\" - using default of {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(Properties properties, String key, long defaultValue){
+        String value = properties.getProperty(key);
+        if(value == null || value.isBlank()){
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        }catch(NumberFormatException e){
+            log.error("Property \"{}\" has non-numeric value \"{}\" - using default of {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package web_patterns.samplespring2025.persistence;
+
+// Thrown instead of waiting on the database when the circuit breaker (CircuitBreakerConnector) is open - the database
+// has been failing and calls are being refused until a background check finds it working again.
+// Unchecked, so it passes through the DAO and service layers unchanged and controllers can answer 503.
+public class DatabaseUnavailableException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public DatabaseUnavailableException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // When the database is next checked - a sensible Retry-After for clients
+    public long getRetryAfterSeconds(){
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,118 @@
+package web_patterns.samplespring2025.persistence;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps result set rows to entities by column position instead of by column name.
+ * <p>
+ * Reading a column by name makes the driver resolve the name to a position (a case-insensitive lookup) on every
+ * call, so a nine-column entity costs nine lookups per row. This mapper resolves the positions of the columns it
+ * needs once from the ResultSetMetaData and remembers them for each SQL statement it is used with, so mapping a
+ * row is only the typed getters and the entity's constructor.
+ * <p>
+ * The cached positions are checked against the result set's column count on each query, so a statement whose
+ * shape changes (e.g. SELECT * after a column is added) is resolved again rather than mapped wrongly.
+ * @param <T> The entity type produced for each row
+ */
+public final class IndexedRowMapper<T> {
+    private final String[] columnLabels;
+    private final RowFactory<T> factory;
+    // Resolved column positions for each SQL statement this mapper has been used with
+    private final Map<String, Resolved> resolvedBySql = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory Builds an entity from the current row, reading column i of columnLabels at position columns[i]
+     * @param columnLabels The columns the factory reads, in the order it expects them
+     */
+    public IndexedRowMapper(RowFactory<T> factory, String... columnLabels){
+        this.factory = factory;
+        this.columnLabels = columnLabels.clone();
+    }
+
+    /**
+     * Maps every remaining row of the result set.
+     * @param sql The statement that produced the result set - used as the key for the cached column positions
+     */
+    public List<T> mapAll(String sql, ResultSet rs) throws SQLException {
+        int[] columns = columnsFor(sql, rs);
+        List<T> rows = new ArrayList<>();
+        while(rs.next()){
+            rows.add(factory.create(rs, columns));
+        }
+        return rows;
+    }
+
+    // Maps the next row, or returns null if there are no more rows
+    public T mapFirst(String sql, ResultSet rs) throws SQLException {
+        if(!rs.next()){
+            return null;
+        }
+        return factory.create(rs, columnsFor(sql, rs));
+    }
+
+    /**
+     * Maps the rows one at a time and hands each to the handler, without collecting them.
+     * Combined with a fetch size (see Connector.applyFetchSize), large reads never hold the whole result in memory.
+     * @return The number of rows handled
+     */
+    public int forEach(String sql, ResultSet rs, RowHandler<T> handler) throws SQLException {
+        int[] columns = columnsFor(sql, rs);
+        int count = 0;
+        while(rs.next()){
+            handler.handle(factory.create(rs, columns));
+            count++;
+        }
+        return count;
+    }
+
+    int[] columnsFor(String sql, ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        Resolved resolved = resolvedBySql.get(sql);
+        if(resolved == null || resolved.columnCount != columnCount){
+            resolved = new Resolved(columnCount, resolve(metaData));
+            resolvedBySql.put(sql, resolved);
+        }
+        return resolved.columns;
+    }
+
+    // One pass over the result set's columns, matched to the labels the factory needs
+    private int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> positions = new HashMap<>();
+        for(int i = metaData.getColumnCount(); i >= 1; i--){
+            // Going backwards means the first column wins if a label appears twice, as with getString(label)
+            positions.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+
+        int[] columns = new int[columnLabels.length];
+        for(int i = 0; i < columnLabels.length; i++){
+            Integer position = positions.get(columnLabels[i].toLowerCase(Locale.ROOT));
+            if(position == null){
+                throw new SQLException("Column \"" + columnLabels[i] + "\" is not in the result set");
+            }
+            columns[i] = position;
+        }
+        return columns;
+    }
+
+    @FunctionalInterface
+    public interface RowFactory<T> {
+        T create(ResultSet rs, int[] columns) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowHandler<T> {
+        void handle(T row) throws SQLException;
+    }
+
+    private record Resolved(int columnCount, int[] columns) {
+    }
+}
@@ -1,41 +1,46 @@
 package web_patterns.samplespring2025.persistence;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Component;
 
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Properties;
 
 @Slf4j
 public class MySqlConnector implements Connector{
     private Properties properties;
-    private Connection conn;
+    // Each thread gets (and frees) its own connection, so concurrent requests can't close each other's
+    private final ThreadLocal<Connection> conn = new ThreadLocal<>();
 
     public MySqlConnector(String propertiesFilename){
-        properties = new Properties();
-        try {
-            // Get the path to the specified properties file
-            String rootPath = Thread.currentThread().getContextClassLoader().getResource(propertiesFilename).getPath();
-            // Load in all key-value pairs from properties file
-            properties.load(new FileInputStream(rootPath));
-        }catch(IOException e){
-            System.out.println("An exception occurred when attempting to load properties from \"" + propertiesFilename + "\": " + e.getMessage());
+        // Read as a classpath stream so this also works when the properties file is inside the packaged jar
+        this(ConnectorProperties.load(propertiesFilename));
+    }
+
+    public MySqlConnector(Properties properties){
+        this.properties = properties;
 
-            log.error("Error: " + e.getMessage());
+        //String driver = "com.mysql.cj.jdbc.Driver";
+        String driver = properties.getProperty("driver", "com.mysql.cj.jdbc.Driver");
+        try {
+            // Load the database driver once - class loading on every call would also pin virtual threads
+            Class.forName(driver);
+        }catch(ClassNotFoundException e){
+            log.error("Driver files have not been loaded. Please check pom driver dependencies details. \n Exception:" +
+                    " {}", e.getMessage());
         }
     }
 
 
     public Connection getConnection(){
-        conn = null;
+        Connection current = conn.get();
+        if(current != null){
+            return current;
+        }
 
 
-        //String driver = "com.mysql.cj.jdbc.Driver";
-        String driver = properties.getProperty("driver", "com.mysql.cj.jdbc.Driver");
         //String url = "jdbc:mysql://127.0.0.1:3306/classicmodels";
         String url = properties.getProperty("url", "jdbc:mysql://127.0.0.1:3306/");
         String database = properties.getProperty("database", "classicmodels");
@@ -45,26 +50,43 @@ public class MySqlConnector implements Connector{
         String password = properties.getProperty("password", "");
 
         try {
-            // Load the database driver
-            Class.forName(driver);
             // Get a connection to the database
-            conn = DriverManager.getConnection(url+database, username, password);
+            current = DriverManager.getConnection(url+database, username, password);
+            conn.set(current);
         }catch(SQLException e){
             log.error("Connection could not be established - incorrect URL or database not switched on. \n Exception:" +
                     " {}", e.getMessage());
-        }catch(ClassNotFoundException e){
-            log.error("Driver files have not been loaded. Please check pom driver dependencies details. \n Exception:" +
-                    " {}", e.getMessage());
         }
 
-        return conn;
+        return current;
+    }
+
+    @Override
+    public void applyFetchSize(Statement statement) throws SQLException {
+        int fetchSize = ConnectorProperties.getInt(properties, ConnectorProperties.FETCH_SIZE, 0);
+        if(fetchSize > 0){
+            statement.setFetchSize(fetchSize);
+        }else if(fetchSize < 0){
+            // Connector/J streams the result a row at a time for this value - the connection can't run another
+            // statement until the result set is closed
+            statement.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
+    @Override
+    public void applyQueryTimeout(Statement statement) throws SQLException {
+        int timeoutSeconds = ConnectorProperties.getInt(properties, ConnectorProperties.QUERY_TIMEOUT_SECONDS, 0);
+        if(timeoutSeconds > 0){
+            statement.setQueryTimeout(timeoutSeconds);
+        }
     }
 
     public void freeConnection(){
-        if(conn != null){
+        Connection current = conn.get();
+        if(current != null){
+            conn.remove();
             try{
-                conn.close();
-                conn = null;
+                current.close();
             }catch (SQLException e){
                 log.error("An exception occurred when attempting to close the connection to the database \n " +
                         "Exception:" +
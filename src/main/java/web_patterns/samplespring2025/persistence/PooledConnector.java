@@ -0,0 +1,329 @@
+package web_patterns.samplespring2025.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Connector that keeps a pool of open connections to the database and hands them out per thread.
+ * <p>
+ * A thread borrows a connection with getConnection() and gives it back with freeConnection(). Calls made by the
+ * same thread in between (e.g. one DAO method calling another) get the same connection back, and it is only
+ * returned to the pool when the outermost caller frees it.
+ * <p>
+ * Pool settings are read from the database properties file:
+ * <ul>
+ *     <li>pool.minSize - connections kept open even when idle (default 2)</li>
+ *     <li>pool.maxSize - most connections that can be open at once (default 10)</li>
+ *     <li>pool.acquireTimeoutMs - how long to wait for a free connection before giving up (default 5000)</li>
+ *     <li>pool.idleTimeoutMs - idle connections above minSize are closed after this long (default 300000)</li>
+ *     <li>pool.evictionIntervalMs - how often idle connections are checked (default 30000)</li>
+ *     <li>pool.validationTimeoutSeconds - timeout for the validity check done on every borrow (default 2)</li>
+ *     <li>query.fetchSize - rows fetched per round trip by streaming reads (default 0 - the driver's default, -1 to
+ *     stream row by row)</li>
+ *     <li>query.timeoutSeconds - how long a statement may run before it is cancelled (default 0 - no limit)</li>
+ * </ul>
+ * Waiting is done with java.util.concurrent primitives (a Semaphore and lock-free deque) rather than synchronized
+ * blocks, so when the application runs on virtual threads a thread waiting for a connection unmounts from its carrier
+ * instead of pinning it. With virtual threads, pool.maxSize (not the web server's thread count) is what limits how many
+ * requests use the database at once.
+ */
+@Slf4j
+public class PooledConnector implements Connector, AutoCloseable {
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSeconds;
+    private final int fetchSize;
+    private final int queryTimeoutSeconds;
+
+    // One permit per connection that may be handed out - limits the pool to maxSize connections
+    private final Semaphore permits;
+    // Most recently returned connections are at the front, so the warmest connection is reused first
+    private final Deque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    // The connection (and how many nested borrows) held by the current thread
+    private final ThreadLocal<Borrowed> borrowed = new ThreadLocal<>();
+    // Set on every failed borrow - whether the current thread's last one failed to connect (rather than timed out)
+    private final ThreadLocal<Boolean> failedToConnect = new ThreadLocal<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    // Told how long each borrow waited for a connection (used for metrics)
+    private volatile AcquireListener acquireListener = (nanos, success) -> {};
+
+    public PooledConnector(String propertiesFilename){
+        this(ConnectorProperties.load(propertiesFilename));
+    }
+
+    public PooledConnector(Properties properties){
+        String driver = properties.getProperty("driver", "com.mysql.cj.jdbc.Driver");
+        this.url = properties.getProperty("url", "jdbc:mysql://127.0.0.1:3306/")
+                + properties.getProperty("database", "classicmodels");
+        this.username = properties.getProperty("username", "root");
+        this.password = properties.getProperty("password", "");
+
+        this.maxSize = Math.max(1, ConnectorProperties.getInt(properties, "pool.maxSize", 10));
+        this.minSize = Math.min(maxSize, Math.max(0, ConnectorProperties.getInt(properties, "pool.minSize", 2)));
+        this.acquireTimeoutMs = ConnectorProperties.getLong(properties, "pool.acquireTimeoutMs", 5000);
+        this.idleTimeoutMs = ConnectorProperties.getLong(properties, "pool.idleTimeoutMs", 300_000);
+        this.validationTimeoutSeconds = ConnectorProperties.getInt(properties, "pool.validationTimeoutSeconds", 2);
+        this.fetchSize = ConnectorProperties.getInt(properties, ConnectorProperties.FETCH_SIZE, 0);
+        this.queryTimeoutSeconds = ConnectorProperties.getInt(properties, ConnectorProperties.QUERY_TIMEOUT_SECONDS, 0);
+        long evictionIntervalMs = ConnectorProperties.getLong(properties, "pool.evictionIntervalMs", 30_000);
+
+        try {
+            // Load the database driver once, rather than on every request for a connection
+            Class.forName(driver);
+        }catch(ClassNotFoundException e){
+            log.error("Driver files have not been loaded. Please check pom driver dependencies details. \n Exception:" +
+                    " {}", e.getMessage());
+        }
+
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::maintainPool, 0, evictionIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Connection pool created for {} (min {}, max {})", url, minSize, maxSize);
+    }
+
+    @Override
+    public Connection getConnection(){
+        if(closed){
+            log.error("getConnection() - Connection pool has been closed");
+            failedToConnect.set(false);
+            return null;
+        }
+
+        // Nested borrow by the same thread - hand back the connection it already holds
+        Borrowed current = borrowed.get();
+        if(current != null){
+            current.holds++;
+            return current.connection;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if(!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)){
+                log.error("getConnection() - No connection became available within {}ms ({} active of max {})",
+                        acquireTimeoutMs, activeConnections.get(), maxSize);
+                acquireListener.acquired(System.nanoTime() - start, false);
+                failedToConnect.set(false);
+                return null;
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            log.error("getConnection() - Interrupted while waiting for a connection");
+            acquireListener.acquired(System.nanoTime() - start, false);
+            failedToConnect.set(false);
+            return null;
+        }
+
+        Connection conn = takeIdleConnection();
+        if(conn == null){
+            conn = openConnection();
+        }
+        if(conn == null){
+            permits.release();
+            acquireListener.acquired(System.nanoTime() - start, false);
+            failedToConnect.set(true);
+            return null;
+        }
+
+        activeConnections.incrementAndGet();
+        borrowed.set(new Borrowed(conn));
+        acquireListener.acquired(System.nanoTime() - start, true);
+        return conn;
+    }
+
+    // Only a failed connect counts - waiting out pool.acquireTimeoutMs means the pool is busy, not that the database is down
+    @Override
+    public boolean lastBorrowFailedToConnect(){
+        return Boolean.TRUE.equals(failedToConnect.get());
+    }
+
+    @Override
+    public void applyFetchSize(Statement statement) throws SQLException {
+        if(fetchSize > 0){
+            statement.setFetchSize(fetchSize);
+        }else if(fetchSize < 0){
+            // Connector/J streams the result a row at a time for this value - the connection can't run another
+            // statement until the result set is closed
+            statement.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
+    @Override
+    public void applyQueryTimeout(Statement statement) throws SQLException {
+        if(queryTimeoutSeconds > 0){
+            statement.setQueryTimeout(queryTimeoutSeconds);
+        }
+    }
+
+    public void setAcquireListener(AcquireListener acquireListener){
+        this.acquireListener = acquireListener;
+    }
+
+    @Override
+    public void freeConnection(){
+        Borrowed current = borrowed.get();
+        if(current == null){
+            return;
+        }
+        current.holds--;
+        if(current.holds > 0){
+            return;
+        }
+
+        borrowed.remove();
+        activeConnections.decrementAndGet();
+        Connection conn = current.connection;
+        try {
+            if(closed || conn.isClosed()){
+                discard(conn);
+            }else{
+                // Don't let an unfinished transaction leak into the next borrower's work
+                if(!conn.getAutoCommit()){
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                idle.offerFirst(new IdleConnection(conn, System.currentTimeMillis()));
+            }
+        }catch(SQLException e){
+            log.error("freeConnection() - Connection could not be reset and will be discarded. \nException: {}",
+                    e.getMessage());
+            discard(conn);
+        }finally {
+            permits.release();
+        }
+    }
+
+    public int getActiveCount(){
+        return activeConnections.get();
+    }
+
+    public int getIdleCount(){
+        return idle.size();
+    }
+
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    @Override
+    public void close(){
+        closed = true;
+        evictor.shutdownNow();
+        IdleConnection entry;
+        while((entry = idle.pollFirst()) != null){
+            discard(entry.connection);
+        }
+        log.info("Connection pool for {} closed", url);
+    }
+
+    // Takes the most recently used idle connection that is still valid, closing any that are not
+    private Connection takeIdleConnection(){
+        IdleConnection entry;
+        while((entry = idle.pollFirst()) != null){
+            try {
+                if(entry.connection.isValid(validationTimeoutSeconds)){
+                    return entry.connection;
+                }
+                log.info("Discarding connection that failed validation");
+            }catch(SQLException e){
+                log.error("Connection validation failed. \nException: {}", e.getMessage());
+            }
+            discard(entry.connection);
+        }
+        return null;
+    }
+
+    private Connection openConnection(){
+        try {
+            Connection conn = DriverManager.getConnection(url, username, password);
+            openConnections.incrementAndGet();
+            return conn;
+        }catch(SQLException e){
+            log.error("Connection could not be established - incorrect URL or database not switched on. \n Exception:" +
+                    " {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void discard(Connection conn){
+        openConnections.decrementAndGet();
+        try {
+            conn.close();
+        }catch(SQLException e){
+            log.error("An exception occurred when attempting to close the connection to the database \n " +
+                    "Exception: {}", e.getMessage());
+        }
+    }
+
+    // Closes connections that have sat idle for too long, then tops the pool back up to its minimum size
+    private void maintainPool(){
+        try {
+            long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+            // Oldest idle connections are at the back of the deque
+            Iterator<IdleConnection> it = idle.descendingIterator();
+            while(it.hasNext() && openConnections.get() > minSize){
+                IdleConnection entry = it.next();
+                if(entry.idleSince < cutoff && idle.removeLastOccurrence(entry)){
+                    discard(entry.connection);
+                }
+            }
+
+            while(!closed && openConnections.get() < minSize && permits.tryAcquire()){
+                try {
+                    Connection conn = openConnection();
+                    if(conn == null){
+                        break;
+                    }
+                    idle.offerLast(new IdleConnection(conn, System.currentTimeMillis()));
+                }finally {
+                    permits.release();
+                }
+            }
+        }catch(RuntimeException e){
+            log.error("Connection pool maintenance failed. \nException: {}", e.getMessage());
+        }
+    }
+
+    // Called after every (outermost) borrow with the time spent getting a connection and whether one was obtained
+    @FunctionalInterface
+    public interface AcquireListener {
+        void acquired(long nanos, boolean success);
+    }
+
+    private static class Borrowed {
+        private final Connection connection;
+        private int holds = 1;
+
+        private Borrowed(Connection connection){
+            this.connection = connection;
+        }
+    }
+
+    private record IdleConnection(Connection connection, long idleSince) {
+    }
+}
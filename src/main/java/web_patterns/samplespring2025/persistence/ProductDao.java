@@ -2,15 +2,26 @@ package web_patterns.samplespring2025.persistence;
 
 
 import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductSummary;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductDao {
     public void closeConnection();
     public List<Product> getAllProducts() throws SQLException;
+    // Like getAllProducts(), but always from the primary database - for results that must include every write
+    // committed so far (a read replica may be behind)
+    public List<Product> getAllProductsFromPrimary() throws SQLException;
     public List<Product> getAllProductsContainingKeyword(String keyword) throws SQLException;
+    public List<Product> getProductsAfterCode(String afterCode, int limit) throws SQLException;
+    public List<ProductSummary> getAllProductSummaries() throws SQLException;
+    public List<ProductSummary> getProductSummariesAfterCode(String afterCode, int limit) throws SQLException;
     public Product getProductByCode(String prodCode) throws SQLException;
+    public List<Product> getProductsByCodes(Collection<String> prodCodes) throws SQLException;
     public Product deleteProductByCode(String prodCode) throws SQLException;
+    public List<Product> deleteProductsContainingKeyword(String keyword) throws SQLException;
     public boolean addProduct(Product p) throws SQLException;
+    public int[] addProducts(List<Product> products) throws SQLException;
 }
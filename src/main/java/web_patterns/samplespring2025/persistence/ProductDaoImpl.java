@@ -4,12 +4,17 @@ package web_patterns.samplespring2025.persistence;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductSummary;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @Slf4j
@@ -17,6 +22,38 @@ import java.util.List;
 // This will allow Spring boot to recognise it as something a service will need
 @Repository
 public class ProductDaoImpl implements ProductDao {
+    // Every column except productDescription - used by the summary queries so the TEXT column is never transferred
+    private static final String SUMMARY_COLUMNS = "productCode, productName, productLine, productScale, " +
+            "productVendor, quantityInStock, buyPrice, MSRP";
+
+    // Rows are mapped by column position (resolved once per query) straight into the entity constructors
+    static final IndexedRowMapper<Product> PRODUCT_MAPPER = new IndexedRowMapper<>(
+            (rs, c) -> new Product(rs.getString(c[0]), rs.getString(c[1]), rs.getString(c[2]), rs.getString(c[3]),
+                    rs.getString(c[4]), rs.getString(c[5]), rs.getInt(c[6]), rs.getDouble(c[7]),
+                    rs.getDouble(c[8])),
+            "productCode", "productName", "productLine", "productScale", "productVendor", "productDescription",
+            "quantityInStock", "buyPrice", "MSRP");
+    static final IndexedRowMapper<ProductSummary> SUMMARY_MAPPER = new IndexedRowMapper<>(
+            (rs, c) -> new ProductSummary(rs.getString(c[0]), rs.getString(c[1]), rs.getString(c[2]),
+                    rs.getString(c[3]), rs.getString(c[4]), rs.getInt(c[5]), rs.getDouble(c[6]), rs.getDouble(c[7])),
+            "productCode", "productName", "productLine", "productScale", "productVendor", "quantityInStock",
+            "buyPrice", "MSRP");
+
+    private static final String SELECT_ALL = "SELECT * FROM products";
+    private static final String SELECT_BY_KEYWORD = "SELECT * FROM products WHERE productDescription LIKE ?";
+    private static final String SELECT_AFTER_CODE =
+            "SELECT * FROM products WHERE productCode > ? ORDER BY productCode LIMIT ?";
+    private static final String SELECT_BY_CODE = "SELECT * FROM products WHERE productCode = ?";
+    // Most codes looked up by one IN (...) query. Smaller lookups are padded up to the next power of two (repeating
+    // the last code), so only a handful of distinct statements are ever prepared and mapped.
+    private static final int MAX_CODES_PER_QUERY = 128;
+    private static final String[] SELECT_BY_CODES = selectByCodesStatements();
+    private static final String SELECT_FOR_DELETE_BY_KEYWORD =
+            "SELECT * FROM products WHERE productDescription LIKE ? ORDER BY productCode FOR UPDATE";
+    private static final String SELECT_ALL_SUMMARIES = "SELECT " + SUMMARY_COLUMNS + " FROM products";
+    private static final String SELECT_SUMMARIES_AFTER_CODE = "SELECT " + SUMMARY_COLUMNS +
+            " FROM products WHERE productCode > ? ORDER BY productCode LIMIT ?";
+
     private Connector connector;
 
     public ProductDaoImpl(Connector connector){
@@ -28,61 +65,50 @@ public class ProductDaoImpl implements ProductDao {
     }
 
     public List<Product> getAllProducts() throws SQLException{
-        Connection conn = connector.getConnection();
+        return selectAllProducts(connector.getReadConnection(), "getAllProducts");
+    }
+
+    // Never read from a replica - used where the result must include every committed write (see ProductDao)
+    public List<Product> getAllProductsFromPrimary() throws SQLException{
+        return selectAllProducts(connector.getPrimaryReadConnection(), "getAllProductsFromPrimary");
+    }
+
+    private List<Product> selectAllProducts(Connection conn, String method) throws SQLException{
         if(conn == null){
-            throw new SQLException("getAllProducts(): Could not establish connection to database.");
+            throw new SQLException(method + "(): Could not establish connection to database.");
         }
 
-        ArrayList<Product> products = new ArrayList<>();
-        try(PreparedStatement ps = conn.prepareStatement("SELECT * FROM products")) {
+        List<Product> products;
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_ALL)) {
+            connector.applyQueryTimeout(ps);
             try(ResultSet rs = ps.executeQuery()) {
-                // Loop through the result set
-                while(rs.next()){
-                    Product product = mapProductRow(rs);
-                    products.add(product);
-                }
+                products = PRODUCT_MAPPER.mapAll(SELECT_ALL, rs);
             }catch(SQLException e){
-                log.error("getAllProducts(): An issue occurred when running the query or processing " +
-                        "the resultset. \nException: {}", e.getMessage());
+                log.error("{}(): An issue occurred when running the query or processing " +
+                        "the resultset. \nException: {}", method, e.getMessage());
                 throw e;
             }
         }catch(SQLException e){
-            log.error("getAllProducts() - The SQL query could not be prepared. \nException: {}", e.getMessage());
+            log.error("{}() - The SQL query could not be prepared. \nException: {}", method, e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
         return products;
     }
 
-    private static Product mapProductRow(ResultSet rs) throws SQLException {
-        return Product.builder()
-                .productCode(rs.getString("productCode"))
-                .productName(rs.getString("productName"))
-                .productLine(rs.getString("productLine"))
-                .productScale(rs.getString("productScale"))
-                .productVendor(rs.getString("productVendor"))
-                .productDescription(rs.getString("productDescription"))
-                .quantityInStock(rs.getInt("quantityInStock"))
-                .buyPrice(rs.getDouble("buyPrice"))
-                .msrp(rs.getDouble("MSRP"))
-                .build();
-    }
-
-
     public List<Product> getAllProductsContainingKeyword(String keyword) throws SQLException{
-        Connection conn = connector.getConnection();
+        Connection conn = connector.getReadConnection();
         if(conn == null){
             throw new SQLException("getAllProductsContainingKeyword(): Could not establish connection to database.");
         }
 
-        ArrayList<Product> products = new ArrayList<>();
-        try(PreparedStatement ps = conn.prepareStatement("SELECT * FROM products WHERE productDescription LIKE ?")) {
+        List<Product> products;
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_BY_KEYWORD)) {
+            connector.applyQueryTimeout(ps);
             ps.setString(1, "%" + keyword + "%");
             try(ResultSet rs = ps.executeQuery()) {
-                // Loop through the result set
-                while(rs.next()){
-                    Product product = mapProductRow(rs);
-                    products.add(product);
-                }
+                products = PRODUCT_MAPPER.mapAll(SELECT_BY_KEYWORD, rs);
             }catch(SQLException e){
                 log.error("getAllProductsContainingKeyword(): An issue occurred when running the query or processing " +
                                 "the resultset. \nException: {}", e.getMessage());
@@ -92,24 +118,109 @@ public class ProductDaoImpl implements ProductDao {
             log.error("getAllProductsContainingKeyword() - The SQL query could not be prepared. \nException: {}",
                     e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
+        }
+        return products;
+    }
+
+    // Keyset pagination - returns up to limit products ordered by code, starting after afterCode
+    // (or from the start when afterCode is null). Uses the primary key index, so every page costs the same.
+    public List<Product> getProductsAfterCode(String afterCode, int limit) throws SQLException{
+        Connection conn = connector.getReadConnection();
+        if(conn == null){
+            throw new SQLException("getProductsAfterCode(): Could not establish connection to database.");
+        }
+
+        List<Product> products;
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_AFTER_CODE)) {
+            connector.applyQueryTimeout(ps);
+            ps.setString(1, afterCode == null ? "" : afterCode);
+            ps.setInt(2, limit);
+            try(ResultSet rs = ps.executeQuery()) {
+                products = PRODUCT_MAPPER.mapAll(SELECT_AFTER_CODE, rs);
+            }catch(SQLException e){
+                log.error("getProductsAfterCode(): An issue occurred when running the query or processing " +
+                        "the resultset. \nException: {}", e.getMessage());
+                throw e;
+            }
+        }catch(SQLException e){
+            log.error("getProductsAfterCode() - The SQL query could not be prepared. \nException: {}",
+                    e.getMessage());
+            throw e;
+        }finally {
+            connector.freeConnection();
         }
         return products;
     }
 
+    public List<ProductSummary> getAllProductSummaries() throws SQLException{
+        Connection conn = connector.getReadConnection();
+        if(conn == null){
+            throw new SQLException("getAllProductSummaries(): Could not establish connection to database.");
+        }
+
+        List<ProductSummary> summaries;
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_ALL_SUMMARIES)) {
+            connector.applyQueryTimeout(ps);
+            try(ResultSet rs = ps.executeQuery()) {
+                summaries = SUMMARY_MAPPER.mapAll(SELECT_ALL_SUMMARIES, rs);
+            }catch(SQLException e){
+                log.error("getAllProductSummaries(): An issue occurred when running the query or processing " +
+                        "the resultset. \nException: {}", e.getMessage());
+                throw e;
+            }
+        }catch(SQLException e){
+            log.error("getAllProductSummaries() - The SQL query could not be prepared. \nException: {}",
+                    e.getMessage());
+            throw e;
+        }finally {
+            connector.freeConnection();
+        }
+        return summaries;
+    }
+
+    // Keyset pagination over summaries - same ordering and cursor semantics as getProductsAfterCode()
+    public List<ProductSummary> getProductSummariesAfterCode(String afterCode, int limit) throws SQLException{
+        Connection conn = connector.getReadConnection();
+        if(conn == null){
+            throw new SQLException("getProductSummariesAfterCode(): Could not establish connection to database.");
+        }
+
+        List<ProductSummary> summaries;
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_SUMMARIES_AFTER_CODE)) {
+            connector.applyQueryTimeout(ps);
+            ps.setString(1, afterCode == null ? "" : afterCode);
+            ps.setInt(2, limit);
+            try(ResultSet rs = ps.executeQuery()) {
+                summaries = SUMMARY_MAPPER.mapAll(SELECT_SUMMARIES_AFTER_CODE, rs);
+            }catch(SQLException e){
+                log.error("getProductSummariesAfterCode(): An issue occurred when running the query or processing " +
+                        "the resultset. \nException: {}", e.getMessage());
+                throw e;
+            }
+        }catch(SQLException e){
+            log.error("getProductSummariesAfterCode() - The SQL query could not be prepared. \nException: {}",
+                    e.getMessage());
+            throw e;
+        }finally {
+            connector.freeConnection();
+        }
+        return summaries;
+    }
+
     public Product getProductByCode(String prodCode) throws SQLException{
-        Connection conn = connector.getConnection();
+        Connection conn = connector.getReadConnection();
         if(conn == null){
             throw new SQLException("getProductByCode(): Could not establish connection to database.");
         }
 
         Product product = null;
-        try(PreparedStatement ps = conn.prepareStatement("SELECT * FROM products WHERE productCode = ?")) {
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_BY_CODE)) {
+            connector.applyQueryTimeout(ps);
             ps.setString(1, prodCode);
             try(ResultSet rs = ps.executeQuery()) {
-                // Loop through the result set
-                if(rs.next()){
-                    product = mapProductRow(rs);
-                }
+                product = PRODUCT_MAPPER.mapFirst(SELECT_BY_CODE, rs);
             }catch(SQLException e){
                 log.error("getProductByCode(): An issue occurred when running the query or processing the resultset. " +
                                 "\nException: {}",
@@ -119,29 +230,94 @@ public class ProductDaoImpl implements ProductDao {
         }catch(SQLException e){
             log.error("getProductByCode() - The SQL query could not be prepared. \nException: {}", e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
         return product;
     }
 
-    public Product deleteProductByCode(String prodCode) throws SQLException{
-        Product removed = getProductByCode(prodCode);
-        if(removed == null){
-            return removed;
+    /**
+     * Looks up many products by code, using one IN (...) query per MAX_CODES_PER_QUERY codes.
+     * @param prodCodes The codes to look up (no nulls)
+     * @return The products found, in no particular order - codes that don't exist are simply left out
+     */
+    public List<Product> getProductsByCodes(Collection<String> prodCodes) throws SQLException{
+        List<Product> products = new ArrayList<>(prodCodes.size());
+        if(prodCodes.isEmpty()){
+            return products;
+        }
+        Connection conn = connector.getReadConnection();
+        if(conn == null){
+            throw new SQLException("getProductsByCodes(): Could not establish connection to database.");
         }
 
+        List<String> codes = List.copyOf(prodCodes);
+        try {
+            for(int start = 0; start < codes.size(); start += MAX_CODES_PER_QUERY){
+                List<String> chunk = codes.subList(start, Math.min(codes.size(), start + MAX_CODES_PER_QUERY));
+                int slots = Math.min(MAX_CODES_PER_QUERY, Integer.highestOneBit(chunk.size() * 2 - 1));
+                String sql = SELECT_BY_CODES[Integer.numberOfTrailingZeros(slots)];
+                try(PreparedStatement ps = conn.prepareStatement(sql)) {
+                    connector.applyQueryTimeout(ps);
+                    for(int i = 0; i < slots; i++){
+                        ps.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try(ResultSet rs = ps.executeQuery()) {
+                        products.addAll(PRODUCT_MAPPER.mapAll(sql, rs));
+                    }
+                }
+            }
+        }catch(SQLException e){
+            log.error("getProductsByCodes() - An issue occurred when running the query or processing the resultset. " +
+                    "\nException: {}", e.getMessage());
+            throw e;
+        }finally {
+            connector.freeConnection();
+        }
+        return products;
+    }
+
+    // SELECT_BY_CODES[n] has 2^n placeholders
+    private static String[] selectByCodesStatements(){
+        String[] statements = new String[Integer.numberOfTrailingZeros(MAX_CODES_PER_QUERY) + 1];
+        for(int n = 0; n < statements.length; n++){
+            statements[n] = "SELECT * FROM products WHERE productCode IN (" +
+                    String.join(", ", Collections.nCopies(1 << n, "?")) + ")";
+        }
+        return statements;
+    }
+
+    public Product deleteProductByCode(String prodCode) throws SQLException{
         Connection conn = connector.getConnection();
         if(conn == null){
             throw new SQLException("deleteProductByCode(): Could not establish connection to database.");
         }
 
+        Product removed;
         int deletedRows = 0;
-        try(PreparedStatement ps = conn.prepareStatement("DELETE FROM products where productCode = ?")) {
-            ps.setString(1, prodCode);
-           deletedRows = ps.executeUpdate();
+        try {
+            // Look the product up on the same (primary) connection - a read replica may not have it yet
+            try(PreparedStatement ps = conn.prepareStatement(SELECT_BY_CODE)) {
+                connector.applyQueryTimeout(ps);
+                ps.setString(1, prodCode);
+                try(ResultSet rs = ps.executeQuery()) {
+                    removed = PRODUCT_MAPPER.mapFirst(SELECT_BY_CODE, rs);
+                }
+            }
+            if(removed == null){
+                return null;
+            }
 
+            try(PreparedStatement ps = conn.prepareStatement("DELETE FROM products where productCode = ?")) {
+                connector.applyQueryTimeout(ps);
+                ps.setString(1, prodCode);
+                deletedRows = ps.executeUpdate();
+            }
         }catch(SQLException e){
             log.error("deleteProductByCode() - The SQL query could not be prepared. \nException: {}", e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
         if(deletedRows == 0){
             removed = null;
@@ -150,6 +326,72 @@ public class ProductDaoImpl implements ProductDao {
         return removed;
     }
 
+    /**
+     * Deletes every product whose description contains the keyword, as a single transaction.
+     * The matching rows are read (and locked) with one SELECT, then removed with one DELETE. If anything fails,
+     * the transaction is rolled back and no products are deleted.
+     * @param keyword The text to look for in product descriptions (matched literally, ignoring case)
+     * @return The products that were deleted
+     * @throws SQLException where the delete could not be completed (nothing will have been deleted)
+     */
+    public List<Product> deleteProductsContainingKeyword(String keyword) throws SQLException{
+        Connection conn = connector.getConnection();
+        if(conn == null){
+            throw new SQLException("deleteProductsContainingKeyword(): Could not establish connection to database.");
+        }
+
+        String pattern = "%" + escapeLikePattern(keyword) + "%";
+        List<Product> deleted;
+        try {
+            conn.setAutoCommit(false);
+            try(PreparedStatement ps = conn.prepareStatement(SELECT_FOR_DELETE_BY_KEYWORD)) {
+                connector.applyQueryTimeout(ps);
+                ps.setString(1, pattern);
+                try(ResultSet rs = ps.executeQuery()) {
+                    deleted = PRODUCT_MAPPER.mapAll(SELECT_FOR_DELETE_BY_KEYWORD, rs);
+                }
+            }
+
+            if(!deleted.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM products WHERE productDescription LIKE ?")) {
+                    connector.applyQueryTimeout(ps);
+                    ps.setString(1, pattern);
+                    int deletedRows = ps.executeUpdate();
+                    if (deletedRows != deleted.size()) {
+                        throw new SQLException("deleteProductsContainingKeyword(): Expected to delete " +
+                                deleted.size() + " products but " + deletedRows + " were deleted");
+                    }
+                }
+            }
+            conn.commit();
+        }catch(SQLException e){
+            log.error("deleteProductsContainingKeyword() - Delete failed and will be rolled back. \nException: {}",
+                    e.getMessage());
+            try {
+                conn.rollback();
+            }catch(SQLException rollbackException){
+                log.error("deleteProductsContainingKeyword() - Rollback failed. \nException: {}",
+                        rollbackException.getMessage());
+            }
+            throw e;
+        }finally {
+            try {
+                conn.setAutoCommit(true);
+            }catch(SQLException e){
+                log.error("deleteProductsContainingKeyword() - Could not restore auto-commit. \nException: {}",
+                        e.getMessage());
+            }
+            connector.freeConnection();
+        }
+        return deleted;
+    }
+
+    // Escape LIKE wildcards so the keyword is matched as plain text
+    private static String escapeLikePattern(String keyword){
+        return keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     public boolean addProduct(Product p) throws SQLException{
         if(p == null){
             throw new IllegalArgumentException("Cannot add a null Product to database");
@@ -161,22 +403,108 @@ public class ProductDaoImpl implements ProductDao {
 
         int addedRows = 0;
         try(PreparedStatement ps = conn.prepareStatement("INSERT INTO products VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-            ps.setString(1, p.getProductCode());
-            ps.setString(2, p.getProductName());
-            ps.setString(3, p.getProductLine());
-            ps.setString(4, p.getProductScale());
-            ps.setString(5, p.getProductVendor());
-            ps.setString(6, p.getProductDescription());
-            ps.setInt(7, p.getQuantityInStock());
-            ps.setDouble(8, p.getBuyPrice());
-            ps.setDouble(9, p.getMsrp());
+            connector.applyQueryTimeout(ps);
+            bindProduct(ps, p);
 
             addedRows = ps.executeUpdate();
 
         }catch(SQLException e){
             log.error("addProduct() - The SQL query could not be prepared. \nException: {}", e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
         return addedRows == 1;
     }
+
+    /**
+     * Inserts a batch of products in one transaction using JDBC batching.
+     * If the batch fails (e.g. one product code already exists), it is rolled back and the products are inserted
+     * one at a time instead, so each row gets its own outcome and the valid rows are still inserted.
+     * Only constraint violations are recorded per row - they fail just their own statement. Any other error (e.g. a
+     * deadlock or lost connection) may have rolled back the rows already inserted, so the whole batch fails instead.
+     * @param products The products to insert
+     * @return One entry per product, in the same order: 0 if the product was inserted, otherwise the SQL error
+     * code for that row (e.g. 1062 for a duplicate product code, 1452 for an unknown product line)
+     * @throws SQLException where no connection could be obtained, a row failed for a reason other than a constraint
+     * violation, or the transaction could not be committed - nothing from the batch is inserted
+     */
+    public int[] addProducts(List<Product> products) throws SQLException{
+        int[] results = new int[products.size()];
+        if(products.isEmpty()){
+            return results;
+        }
+
+        Connection conn = connector.getConnection();
+        if(conn == null){
+            throw new SQLException("addProducts(): Could not establish connection to database.");
+        }
+
+        try(PreparedStatement ps = conn.prepareStatement("INSERT INTO products VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            connector.applyQueryTimeout(ps);
+            conn.setAutoCommit(false);
+            try {
+                for(Product p : products){
+                    bindProduct(ps, p);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+                return results;
+            }catch(BatchUpdateException e){
+                log.info("addProducts() - Batch of {} failed ({}), retrying row by row", products.size(),
+                        e.getMessage());
+                conn.rollback();
+                ps.clearBatch();
+            }
+
+            // Slow path - at least one row is bad, so find out which
+            for(int i = 0; i < products.size(); i++){
+                try {
+                    bindProduct(ps, products.get(i));
+                    ps.executeUpdate();
+                }catch(SQLException e){
+                    if(!isConstraintViolation(e)){
+                        throw e;
+                    }
+                    results[i] = e.getErrorCode() != 0 ? e.getErrorCode() : -1;
+                }
+            }
+            conn.commit();
+            return results;
+        }catch(SQLException e){
+            log.error("addProducts() - The batch insert could not be completed. \nException: {}", e.getMessage());
+            try {
+                conn.rollback();
+            }catch(SQLException rollbackException){
+                log.error("addProducts() - Rollback failed. \nException: {}", rollbackException.getMessage());
+            }
+            throw e;
+        }finally {
+            try {
+                conn.setAutoCommit(true);
+            }catch(SQLException e){
+                log.error("addProducts() - Could not restore auto-commit. \nException: {}", e.getMessage());
+            }
+            connector.freeConnection();
+        }
+    }
+
+    // Duplicate keys, foreign key failures etc. - SQLSTATE class 23, whichever exception type the driver uses
+    private static boolean isConstraintViolation(SQLException e){
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    private static void bindProduct(PreparedStatement ps, Product p) throws SQLException {
+        ps.setString(1, p.getProductCode());
+        ps.setString(2, p.getProductName());
+        ps.setString(3, p.getProductLine());
+        ps.setString(4, p.getProductScale());
+        ps.setString(5, p.getProductVendor());
+        ps.setString(6, p.getProductDescription());
+        ps.setInt(7, p.getQuantityInStock());
+        ps.setDouble(8, p.getBuyPrice());
+        ps.setDouble(9, p.getMsrp());
+    }
 }
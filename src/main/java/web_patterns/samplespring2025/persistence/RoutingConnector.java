@@ -0,0 +1,201 @@
+package web_patterns.samplespring2025.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Connector that sends writes to a primary database and spreads reads across read replicas.
+ * <p>
+ * getConnection() always borrows from the primary. getReadConnection() borrows from the next replica in turn,
+ * except that reads go to the primary when:
+ * <ul>
+ *     <li>the thread already holds a primary connection (e.g. a read inside a transaction), so it sees its own
+ *     uncommitted work</li>
+ *     <li>a write finished less than readAfterWritePinMs ago, so a client that has just changed something reads it
+ *     back even if the replicas haven't caught up yet</li>
+ *     <li>every replica is currently ejected</li>
+ * </ul>
+ * A replica that fails to hand out a connection because it can't be reached (see
+ * Connector.lastBorrowFailedToConnect()) is ejected for ejectMs, after which it is tried again on the next read.
+ * A replica whose pool was only too busy to hand one out in time stays in rotation - the read moves on to the next. Replication lag is not measured - the pin window is the only guard against reading stale data.
+ * <p>
+ * freeConnection() gives back the most recent borrow made by the thread, to whichever connector it came from.
+ */
+@Slf4j
+public class RoutingConnector implements Connector, AutoCloseable {
+    private final Connector primary;
+    private final List<Connector> replicas;
+    private final long ejectNanos;
+    private final long pinNanos;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    // System.nanoTime() until which each replica is ejected (0 when healthy)
+    private final AtomicLongArray ejectedUntil;
+    private volatile long lastWriteAt;
+    private volatile boolean written = false;
+    // The borrows made by the current thread, most recent first
+    private final ThreadLocal<Deque<Borrow>> borrowed = ThreadLocal.withInitial(ArrayDeque::new);
+    // Set on every failed borrow - the connector the current thread's last one failed on
+    private final ThreadLocal<Connector> failedOn = new ThreadLocal<>();
+
+    /**
+     * @param primary Where writes (and pinned reads) go
+     * @param replicas Read replicas, used in turn
+     * @param ejectMs How long a failing replica is taken out of rotation
+     * @param readAfterWritePinMs How long after a write all reads go to the primary (0 to never pin)
+     */
+    public RoutingConnector(Connector primary, List<? extends Connector> replicas, long ejectMs,
+                            long readAfterWritePinMs){
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(ejectMs);
+        this.pinNanos = TimeUnit.MILLISECONDS.toNanos(readAfterWritePinMs);
+        this.ejectedUntil = new AtomicLongArray(this.replicas.size());
+        log.info("Routing connector created with {} read replicas", this.replicas.size());
+    }
+
+    @Override
+    public Connection getConnection(){
+        return borrow(primary, true);
+    }
+
+    @Override
+    public Connection getReadConnection(){
+        Deque<Borrow> held = borrowed.get();
+        for(Borrow borrow : held){
+            if(borrow.connector == primary){
+                return borrow(primary, false);
+            }
+        }
+        // Nested read - stay on the replica already in use
+        if(!held.isEmpty()){
+            return borrow(held.peekFirst().connector, false);
+        }
+        if(replicas.isEmpty() || pinnedToPrimary()){
+            return borrow(primary, false);
+        }
+
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for(int i = 0; i < replicas.size(); i++){
+            int index = (start + i) % replicas.size();
+            if(isEjected(index)){
+                continue;
+            }
+            Connector replica = replicas.get(index);
+            Connection conn = borrow(replica, false);
+            if(conn != null){
+                ejectedUntil.set(index, 0);
+                return conn;
+            }
+            if(!replica.lastBorrowFailedToConnect()){
+                log.warn("getReadConnection() - Replica {} had no free connection, trying the next", index);
+                continue;
+            }
+            log.error("getReadConnection() - Replica {} failed and is ejected for {}ms", index,
+                    TimeUnit.NANOSECONDS.toMillis(ejectNanos));
+            ejectedUntil.set(index, System.nanoTime() + ejectNanos);
+        }
+        return borrow(primary, false);
+    }
+
+    // A read on the primary - doesn't start the read-after-write pin window
+    @Override
+    public Connection getPrimaryReadConnection(){
+        return borrow(primary, false);
+    }
+
+    @Override
+    public void freeConnection(){
+        Borrow borrow = borrowed.get().pollFirst();
+        if(borrow == null){
+            return;
+        }
+        borrow.connector.freeConnection();
+        if(borrow.write){
+            // Start the pin window when the write has finished, not when it started
+            lastWriteAt = System.nanoTime();
+            written = true;
+        }
+    }
+
+    @Override
+    public boolean lastBorrowFailedToConnect(){
+        Connector connector = failedOn.get();
+        return connector == null || connector.lastBorrowFailedToConnect();
+    }
+
+    // Checks the primary with a read borrow, so the check doesn't start the read-after-write pin window
+    @Override
+    public boolean isReachable(){
+        if(getPrimaryReadConnection() == null){
+            return false;
+        }
+        freeConnection();
+        return true;
+    }
+
+    @Override
+    public void applyFetchSize(Statement statement) throws SQLException {
+        Borrow current = borrowed.get().peekFirst();
+        (current != null ? current.connector : primary).applyFetchSize(statement);
+    }
+
+    @Override
+    public void applyQueryTimeout(Statement statement) throws SQLException {
+        Borrow current = borrowed.get().peekFirst();
+        (current != null ? current.connector : primary).applyQueryTimeout(statement);
+    }
+
+    public Connector getPrimary(){
+        return primary;
+    }
+
+    public List<Connector> getReplicas(){
+        return replicas;
+    }
+
+    public boolean isEjected(int replica){
+        long until = ejectedUntil.get(replica);
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for(Connector replica : replicas){
+            if(replica instanceof AutoCloseable closeable){
+                closeable.close();
+            }
+        }
+        if(primary instanceof AutoCloseable closeable){
+            closeable.close();
+        }
+    }
+
+    private boolean pinnedToPrimary(){
+        return pinNanos > 0 && written && System.nanoTime() - lastWriteAt < pinNanos;
+    }
+
+    // Borrow from one connector, remembering where the connection came from so freeConnection() can return it
+    // Only write borrows (getConnection()) start the pin window - pinned reads on the primary don't extend it
+    private Connection borrow(Connector connector, boolean write){
+        Connection conn = connector.getConnection();
+        if(conn != null){
+            borrowed.get().addFirst(new Borrow(connector, write));
+        }else{
+            failedOn.set(connector);
+        }
+        return conn;
+    }
+
+    private record Borrow(Connector connector, boolean write) {
+    }
+}
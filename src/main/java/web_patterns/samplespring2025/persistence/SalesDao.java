@@ -0,0 +1,10 @@
+package web_patterns.samplespring2025.persistence;
+
+import web_patterns.samplespring2025.entities.SaleLine;
+
+import java.sql.SQLException;
+
+public interface SalesDao {
+    public int forEachSaleLine(int afterOrderNumber, IndexedRowMapper.RowHandler<SaleLine> handler)
+            throws SQLException;
+}
@@ -0,0 +1,73 @@
+package web_patterns.samplespring2025.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import web_patterns.samplespring2025.entities.SaleLine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+@Slf4j
+@Repository
+public class SalesDaoImpl implements SalesDao {
+    static final IndexedRowMapper<SaleLine> SALE_LINE_MAPPER = new IndexedRowMapper<>(
+            (rs, c) -> new SaleLine(rs.getInt(c[0]), rs.getObject(c[1], LocalDate.class), rs.getInt(c[2]),
+                    rs.getString(c[3]), rs.getString(c[4]), rs.getString(c[5]), rs.getString(c[6]), rs.getInt(c[7]),
+                    rs.getDouble(c[8])),
+            "orderNumber", "orderDate", "customerNumber", "customerName", "productCode", "productName",
+            "productLine", "quantityOrdered", "priceEach");
+
+    // Ordered by the orderdetails primary key (orderNumber, productCode), so the lines of each order arrive together
+    // and the database can read the rows in index order instead of sorting them
+    private static final String SELECT_LINES_AFTER_ORDER =
+            "SELECT od.orderNumber, o.orderDate, o.customerNumber, c.customerName, od.productCode, p.productName, " +
+            "p.productLine, od.quantityOrdered, od.priceEach " +
+            "FROM orderdetails od " +
+            "JOIN orders o ON o.orderNumber = od.orderNumber " +
+            "JOIN customers c ON c.customerNumber = o.customerNumber " +
+            "JOIN products p ON p.productCode = od.productCode " +
+            "WHERE od.orderNumber > ? ORDER BY od.orderNumber, od.productCode";
+
+    private Connector connector;
+
+    public SalesDaoImpl(Connector connector){
+        this.connector = connector;
+    }
+
+    /**
+     * Streams every order line belonging to an order numbered above afterOrderNumber, in order number order.
+     * The connector's fetch size is applied, so a full scan of orderdetails never holds the whole table in memory.
+     * Reads go to a replica when the routing connector is in use.
+     * @param afterOrderNumber The highest order number already seen - 0 to read every line
+     * @param handler Called with each line in turn, while the connection is still held - keep it quick
+     * @return The number of lines read
+     */
+    public int forEachSaleLine(int afterOrderNumber, IndexedRowMapper.RowHandler<SaleLine> handler)
+            throws SQLException {
+        Connection conn = connector.getReadConnection();
+        if(conn == null){
+            throw new SQLException("forEachSaleLine(): Could not establish connection to database.");
+        }
+
+        try(PreparedStatement ps = conn.prepareStatement(SELECT_LINES_AFTER_ORDER)) {
+            connector.applyQueryTimeout(ps);
+            connector.applyFetchSize(ps);
+            ps.setInt(1, afterOrderNumber);
+            try(ResultSet rs = ps.executeQuery()) {
+                return SALE_LINE_MAPPER.forEach(SELECT_LINES_AFTER_ORDER, rs, handler);
+            }catch(SQLException e){
+                log.error("forEachSaleLine(): An issue occurred when running the query or processing " +
+                        "the resultset. \nException: {}", e.getMessage());
+                throw e;
+            }
+        }catch(SQLException e){
+            log.error("forEachSaleLine() - The SQL query could not be prepared. \nException: {}", e.getMessage());
+            throw e;
+        }finally {
+            connector.freeConnection();
+        }
+    }
+}
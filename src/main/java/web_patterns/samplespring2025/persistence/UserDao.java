@@ -2,8 +2,9 @@ package web_patterns.samplespring2025.persistence;
 
 import java.sql.SQLException;
 
+// Stores and reads password hashes only - BCrypt itself runs in AuthService, on the PasswordHashingExecutor
 public interface UserDao {
-    public boolean register(String username, String password) throws SQLException;
-    public boolean login(String username, String password) throws SQLException;
+    public boolean addUser(String username, String hashedPassword) throws SQLException;
+    public String getPasswordHash(String username) throws SQLException;
     public void closeConnection();
 }
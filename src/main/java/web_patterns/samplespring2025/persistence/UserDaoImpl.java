@@ -21,64 +21,68 @@ public class UserDaoImpl implements UserDao{
         connector.freeConnection();
     }
 
-    public boolean register(String username, String password) throws SQLException {
-        Connection conn = connector.getConnection();
-        if (conn == null) {
-            throw new SQLException("login(): Could not establish connection to database.");
-        }
-
+    // Stores a user with an already hashed password - returns false if the username is taken
+    public boolean addUser(String username, String hashedPassword) throws SQLException {
         if(username == null){
             throw new IllegalArgumentException("Cannot register with a null username");
         }
 
-        if(password == null || password.isBlank()){
-            throw new IllegalArgumentException("Cannot register with a null or blank password");
+        if(hashedPassword == null || hashedPassword.isBlank()){
+            throw new IllegalArgumentException("Cannot register with a null or blank password hash");
         }
 
-        String hashedPassword = PasswordHasher.hashPassword(password);
+        Connection conn = connector.getConnection();
+        if (conn == null) {
+            throw new SQLException("addUser(): Could not establish connection to database.");
+        }
 
         int addedRows = 0;
         try(PreparedStatement ps =
                     conn.prepareStatement("INSERT INTO users (username, password) VALUES (?, ?)")) {
+            connector.applyQueryTimeout(ps);
             ps.setString(1, username);
             ps.setString(2, hashedPassword);
 
             addedRows = ps.executeUpdate();
 
         }catch(SQLIntegrityConstraintViolationException e){
-            log.error("register() - Username \"{}\" unavailable", username);
+            log.error("addUser() - Username \"{}\" unavailable", username);
         }catch(SQLException e){
-            log.error("register() - The SQL query could not be prepared or executed. \nException: {}", e.getMessage());
+            log.error("addUser() - The SQL query could not be prepared or executed. \nException: {}", e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
         return addedRows == 1;
     }
 
-    public boolean login(String username, String password) throws SQLException {
-        Connection conn = connector.getConnection();
+    // Returns the stored BCrypt hash for the user, or null if there is no user with that username
+    public String getPasswordHash(String username) throws SQLException {
+        Connection conn = connector.getReadConnection();
         if (conn == null) {
-            throw new SQLException("login(): Could not establish connection to database.");
+            throw new SQLException("getPasswordHash(): Could not establish connection to database.");
         }
 
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM users where username = ?")) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT password FROM users where username = ?")) {
+            connector.applyQueryTimeout(ps);
             ps.setString(1, username);
             try(ResultSet rs = ps.executeQuery()) {
-                // If user found with supplied username, verify password against stored hash
                 if(rs.next()){
-                    String hashedPassword = rs.getString("password");
-                    return PasswordHasher.verifyPassword(password, hashedPassword);
+                    // Only one column is selected, so read it by position rather than having the driver look up the name
+                    return rs.getString(1);
                 }
-                // No user found for that username - return false
-                return false;
+                return null;
             }catch(SQLException e){
-                log.error("login(): An issue occurred when running the query or processing " +
+                log.error("getPasswordHash(): An issue occurred when running the query or processing " +
                         "the resultset. \nException: {}", e.getMessage());
                 throw e;
             }
         }catch(SQLException e){
-            log.error("login() - The SQL query could not be prepared. \nException: {}",
+            log.error("getPasswordHash() - The SQL query could not be prepared. \nException: {}",
                     e.getMessage());
             throw e;
+        }finally {
+            connector.freeConnection();
         }
     }
 
@@ -94,7 +98,8 @@ public class UserDaoImpl implements UserDao{
         String password = input.nextLine();
 
         try {
-            boolean registered = userDao.register(username, password);
+            // Command-line tool - hashing here holds no request thread
+            boolean registered = userDao.addUser(username, PasswordHasher.hashPassword(password));
             if (registered) {
                 System.out.println("Welcome to the system, " + username);
             } else {
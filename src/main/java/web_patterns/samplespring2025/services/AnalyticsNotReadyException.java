@@ -0,0 +1,9 @@
+package web_patterns.samplespring2025.services;
+
+// Thrown by SalesAnalyticsService when the figures haven't been built yet (or analytics are turned off), so the
+// controller can answer 503 for exactly this case without catching unrelated failures
+public class AnalyticsNotReadyException extends RuntimeException {
+    public AnalyticsNotReadyException(String message){
+        super(message);
+    }
+}
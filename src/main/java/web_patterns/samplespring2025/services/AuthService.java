@@ -10,21 +10,38 @@ import java.sql.SQLException;
 @Service
 public class AuthService {
     private UserDao userDao;
+    private PasswordHashingExecutor hashingExecutor;
 
-    public AuthService(UserDao dao){
+    public AuthService(UserDao dao, PasswordHashingExecutor hashingExecutor){
         this.userDao = dao;
+        this.hashingExecutor = hashingExecutor;
     }
 
     public void shutdownService(){
         userDao.closeConnection();
     }
 
+    // Hashes on the hashing executor - throws RejectedExecutionException if it is saturated
+    public boolean register(String username, String password) throws SQLException {
+        if(username == null || username.isBlank() || password == null || password.isBlank()){
+            throw new IllegalArgumentException("username and password cannot be blank");
+        }
+
+        log.info("Registration attempt: {}", username);
+        return userDao.addUser(username, hashingExecutor.hashPassword(password));
+    }
+
     public boolean login(String username, String password) throws SQLException {
         if(username == null || username.isBlank() || password == null || password.isBlank()){
             throw new IllegalArgumentException("username and password cannot be blank");
         }
 
         log.info("Login attempt: {}", username);
-        return userDao.login(username, password);
+        String hashedPassword = userDao.getPasswordHash(username);
+        if(hashedPassword == null){
+            return false;
+        }
+        // Verify on the hashing executor - throws RejectedExecutionException if it is saturated
+        return hashingExecutor.verifyPassword(password, hashedPassword);
     }
 }
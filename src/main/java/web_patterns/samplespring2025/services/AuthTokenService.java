@@ -0,0 +1,12 @@
+package web_patterns.samplespring2025.services;
+
+// Issues and checks the bearer tokens handed out at login (auth.token.mode in application.properties)
+//   opaque - random tokens looked up in the TokenStore on this instance (OpaqueTokenService)
+//   signed - self-contained HMAC-signed tokens checked without any lookup, valid on every instance (SignedTokenService)
+public interface AuthTokenService {
+    public String issue(String username);
+    // Returns the username the token was issued to, or null if the token is invalid, expired or revoked
+    public String validate(String token);
+    // Logout - the token is no longer accepted
+    public void revoke(String token);
+}
@@ -0,0 +1,130 @@
+package web_patterns.samplespring2025.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import web_patterns.samplespring2025.entities.CatalogSnapshot;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
+import web_patterns.samplespring2025.persistence.ProductDao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the full product list pre-serialized as JSON bytes (plus a gzip copy), so /getAllProducts can write the
+ * bytes straight to the response instead of running Jackson over every product on every request.
+ * <p>
+ * The snapshot is rebuilt on a background thread whenever the catalog version changes. Until the rebuild finishes,
+ * getCurrent() returns null and callers fall back to serializing the list themselves - a snapshot is never served
+ * for anything but the current catalog version. Rebuilds requested while one is already queued are merged.
+ * <p>
+ * Rebuilds read the products from the primary database rather than through ProductService's cache or a read replica,
+ * so a list loaded before the latest change (still being handed to that load's callers) or a replica that hasn't
+ * caught up yet can't end up in a snapshot labelled with the new version.
+ * <p>
+ * Brotli variants are not built: the JDK has no Brotli encoder, and the available libraries need native code.
+ */
+@Slf4j
+@Service
+public class CatalogSnapshotService {
+    private final ProductDao productDao;
+    private final CatalogVersion catalogVersion;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    private final ExecutorService rebuilder;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private volatile CatalogSnapshot snapshot;
+
+    public CatalogSnapshotService(ProductDao productDao, CatalogVersion catalogVersion, ObjectMapper objectMapper,
+                                  Environment env){
+        this.productDao = productDao;
+        this.catalogVersion = catalogVersion;
+        this.objectMapper = objectMapper;
+        this.enabled = env.getProperty("product.snapshot.enabled", Boolean.class, true);
+        this.rebuilder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        if(!enabled){
+            return;
+        }
+        catalogVersion.addListener(this::requestRebuild);
+        requestRebuild();
+    }
+
+    // The snapshot for the current catalog version, or null if there isn't one (yet)
+    public CatalogSnapshot getCurrent(){
+        if(!enabled){
+            return null;
+        }
+        CatalogSnapshot current = snapshot;
+        if(current == null || current.getVersion() != catalogVersion.getVersion()){
+            // Covers a rebuild that failed (e.g. database down) - try again in the background
+            requestRebuild();
+            return null;
+        }
+        return current;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    private void requestRebuild(){
+        if(rebuildQueued.compareAndSet(false, true)){
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    private void rebuild(){
+        rebuildQueued.set(false);
+        // Read the version first - every change up to it is already committed on the primary, so the query below sees
+        // it. If the catalog changes while this runs, the snapshot is already stale and the change will have queued
+        // another rebuild
+        long version = catalogVersion.getVersion();
+        try {
+            List<Product> products = productDao.getAllProductsFromPrimary();
+            byte[] json = objectMapper.writeValueAsBytes(products);
+            snapshot = new CatalogSnapshot(version, products.size(), json, gzip(json));
+            log.info("Catalog snapshot built for version {}: {} products, {} bytes JSON, {} bytes gzip", version,
+                    products.size(), json.length, snapshot.getGzip().length);
+        }catch(SQLException | JsonProcessingException | DatabaseUnavailableException e){
+            log.error("Catalog snapshot could not be built for version {}: {}", version, e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] data){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }catch(IOException e){
+            // Not possible when writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        rebuilder.shutdownNow();
+    }
+}
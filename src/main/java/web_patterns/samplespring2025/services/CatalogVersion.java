@@ -0,0 +1,65 @@
+package web_patterns.samplespring2025.services;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A version number for the product catalog, bumped by ProductService whenever products are added or deleted.
+ * <p>
+ * Used to build ETag and Last-Modified headers for product reads, so a client that already has the current data
+ * gets a 304 without the database or JSON serialization being touched. The ETag includes the time the application
+ * started, so versions from before a restart (or from another instance) never match.
+ * <p>
+ * Only changes made through this application are seen - rows changed directly in MySQL are not, until the next
+ * change made here or a restart.
+ * <p>
+ * HTTP dates are in whole seconds, so two changes in the same second would share a Last-Modified and a client holding
+ * the first would get a 304 for If-Modified-Since after the second. Last-Modified is therefore left off (-1) until
+ * the second of the latest change is over - until then clients can only revalidate with the ETag.
+ */
+public class CatalogVersion {
+    private final long epoch = System.currentTimeMillis();
+    // The version and its change time (whole seconds) are swapped together, so they are never read half updated
+    private final AtomicReference<Stamp> current = new AtomicReference<>(new Stamp(epoch, 0, epoch / 1000 * 1000));
+    // Told after every bump - must be quick, as they run on the thread that changed the catalog
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public void bump(){
+        current.updateAndGet(stamp -> new Stamp(epoch, stamp.version() + 1, System.currentTimeMillis() / 1000 * 1000));
+        for(Runnable listener : listeners){
+            listener.run();
+        }
+    }
+
+    public void addListener(Runnable listener){
+        listeners.add(listener);
+    }
+
+    // The current version with its ETag and Last-Modified - read once per response so the two always agree
+    public Stamp current(){
+        return current.get();
+    }
+
+    public long getVersion(){
+        return current.get().version();
+    }
+
+    public String etag(){
+        return current.get().etag();
+    }
+
+    public record Stamp(long epoch, long version, long changedAt) {
+        // A weak ETag for any product response built from the catalog at this version, e.g. W/"18c9a3f2b10-4"
+        // Weak because the same version is served both plain and gzip-encoded (byte-different, same content), and
+        // clients and caches compare ETags per URL, so one value can serve every product endpoint
+        public String etag(){
+            return "W/\"" + Long.toHexString(epoch) + "-" + version + "\"";
+        }
+
+        // The Last-Modified time, or -1 (none) while the second this version was made in is still going on
+        public long lastModified(){
+            return System.currentTimeMillis() - changedAt < 1000 ? -1 : changedAt;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.TokenStoreStats;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded token store where tokens expire after a time-to-live.
+ * <p>
+ * Expiry is either absolute (counted from when the token was issued) or sliding (counted from when the token was
+ * last used). The store is split into stripes, each with its own lock, so logins and token checks for different
+ * tokens rarely wait on each other.
+ * <p>
+ * Each stripe keeps its tokens in expiry order (oldest first), so expired tokens are always at the front. They are
+ * removed lazily - a token found expired on lookup is dropped, and each put clears expired tokens from the front of
+ * its stripe. No full scan is ever needed. When a stripe is full, its oldest token is evicted.
+ */
+public class ExpiringTokenStore implements TokenStore {
+    private final long ttlNanos;
+    private final boolean slidingExpiry;
+    private final int maxEntries;
+    private final Stripe[] stripes;
+    // System.nanoTime() outside tests
+    private final LongSupplier clockNanos;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+
+    /**
+     * @param ttlSeconds How long a token stays valid
+     * @param slidingExpiry true to restart the TTL each time the token is used, false for a fixed lifetime
+     * @param maxEntries The most tokens held at once - the oldest are evicted beyond this
+     * @param stripeCount The number of independently locked stripes (rounded down to a power of two)
+     */
+    public ExpiringTokenStore(long ttlSeconds, boolean slidingExpiry, int maxEntries, int stripeCount){
+        this(ttlSeconds, slidingExpiry, maxEntries, stripeCount, System::nanoTime);
+    }
+
+    ExpiringTokenStore(long ttlSeconds, boolean slidingExpiry, int maxEntries, int stripeCount,
+                       LongSupplier clockNanos){
+        if(ttlSeconds < 1 || maxEntries < 1 || stripeCount < 1){
+            throw new IllegalArgumentException("TTL, max entries and stripe count must all be at least 1");
+        }
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.slidingExpiry = slidingExpiry;
+        this.maxEntries = maxEntries;
+        this.clockNanos = clockNanos;
+
+        // A power of two, so a token's stripe can be picked with a bit mask
+        int count = Integer.highestOneBit(Math.min(stripeCount, maxEntries));
+        this.stripes = new Stripe[count];
+        int perStripe = Math.max(1, maxEntries / count);
+        for(int i = 0; i < count; i++){
+            stripes[i] = new Stripe(perStripe, slidingExpiry);
+        }
+    }
+
+    @Override
+    public void put(String token, String username){
+        Stripe stripe = stripeFor(token);
+        long now = clockNanos.getAsLong();
+        stripe.lock.lock();
+        try {
+            purgeExpired(stripe, now);
+            if(!stripe.entries.containsKey(token) && stripe.entries.size() >= stripe.capacity){
+                Iterator<Map.Entry<String, Entry>> oldest = stripe.entries.entrySet().iterator();
+                oldest.next();
+                oldest.remove();
+                evicted.increment();
+            }
+            // Remove first so a re-issued token moves to the back of the expiry order
+            stripe.entries.remove(token);
+            stripe.entries.put(token, new Entry(username, now + ttlNanos));
+        }finally {
+            stripe.lock.unlock();
+        }
+        issued.increment();
+    }
+
+    @Override
+    public String get(String token){
+        if(token == null){
+            return null;
+        }
+        Stripe stripe = stripeFor(token);
+        long now = clockNanos.getAsLong();
+        stripe.lock.lock();
+        try {
+            // With sliding expiry the map is access-ordered, so this get also moves the token to the back
+            Entry entry = stripe.entries.get(token);
+            if(entry == null){
+                return null;
+            }
+            if(now - entry.expiresAt >= 0){
+                stripe.entries.remove(token);
+                expired.increment();
+                return null;
+            }
+            if(slidingExpiry){
+                entry.expiresAt = now + ttlNanos;
+            }
+            return entry.username;
+        }finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String token){
+        if(token == null){
+            return;
+        }
+        Stripe stripe = stripeFor(token);
+        stripe.lock.lock();
+        try {
+            if(stripe.entries.remove(token) != null){
+                removed.increment();
+            }
+        }finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public TokenStoreStats getStats(){
+        long now = clockNanos.getAsLong();
+        int size = 0;
+        for(Stripe stripe : stripes){
+            stripe.lock.lock();
+            try {
+                purgeExpired(stripe, now);
+                size += stripe.entries.size();
+            }finally {
+                stripe.lock.unlock();
+            }
+        }
+        return TokenStoreStats.builder()
+                .size(size)
+                .maxEntries(maxEntries)
+                .ttlSeconds(ttlNanos / 1_000_000_000L)
+                .slidingExpiry(slidingExpiry)
+                .issued(issued.sum())
+                .expired(expired.sum())
+                .evicted(evicted.sum())
+                .removed(removed.sum())
+                .build();
+    }
+
+    // Tokens are in expiry order, so stop at the first one that is still valid
+    private void purgeExpired(Stripe stripe, long now){
+        Iterator<Entry> it = stripe.entries.values().iterator();
+        while(it.hasNext()){
+            if(now - it.next().expiresAt < 0){
+                return;
+            }
+            it.remove();
+            expired.increment();
+        }
+    }
+
+    private Stripe stripeFor(String token){
+        int h = token.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries;
+        private final int capacity;
+
+        private Stripe(int capacity, boolean accessOrder){
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, accessOrder);
+        }
+    }
+
+    private static class Entry {
+        private final String username;
+        private long expiresAt;
+
+        private Entry(String username, long expiresAt){
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package web_patterns.samplespring2025.services;
+
+import java.util.UUID;
+
+// Random UUID tokens kept in a TokenStore - a token is only known to the instance that issued it
+public class OpaqueTokenService implements AuthTokenService {
+    private final TokenStore tokenStore;
+
+    public OpaqueTokenService(TokenStore tokenStore){
+        this.tokenStore = tokenStore;
+    }
+
+    @Override
+    public String issue(String username){
+        String token = UUID.randomUUID().toString();
+        tokenStore.put(token, username);
+        return token;
+    }
+
+    @Override
+    public String validate(String token){
+        return tokenStore.get(token);
+    }
+
+    @Override
+    public void revoke(String token){
+        tokenStore.remove(token);
+    }
+}
@@ -0,0 +1,125 @@
+package web_patterns.samplespring2025.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import web_patterns.samplespring2025.utils.PasswordHasher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt hashing and verification on a small, dedicated thread pool instead of on request threads.
+ * <p>
+ * BCrypt is deliberately slow (hundreds of ms of CPU per call), so a burst of logins run on the web server's
+ * threads would leave none free for other requests. Here the work is limited to one thread per core, with a
+ * bounded queue in front. When the queue is full, or a queued task isn't finished within the timeout, the call is
+ * rejected straight away with a RejectedExecutionException so the caller can answer with a 503.
+ * <p>
+ * These are platform threads even when the web layer runs on virtual threads: BCrypt is pure CPU work, and running
+ * it on virtual threads would tie up the carrier threads every other request depends on.
+ * <p>
+ * Publishes auth.bcrypt.verify (time spent verifying, including any wait in the queue), auth.bcrypt.rejected and
+ * gauges for the running and queued task counts.
+ */
+@Slf4j
+public class PasswordHashingExecutor {
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final Timer verifyTimer;
+    private final Counter rejected;
+
+    /**
+     * @param threads The number of hashing threads (normally the number of cores)
+     * @param queueCapacity How many hashing tasks may wait for a thread before new ones are rejected
+     * @param timeoutMs How long a caller waits for its result before giving up
+     * @param registry Where the executor's metrics are published
+     */
+    public PasswordHashingExecutor(int threads, int queueCapacity, long timeoutMs, MeterRegistry registry){
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMs = timeoutMs;
+
+        this.verifyTimer = Timer.builder("auth.bcrypt.verify")
+                .description("Time taken to verify a password, including time queued")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejected = Counter.builder("auth.bcrypt.rejected")
+                .description("Hashing calls rejected because the queue was full or the timeout passed")
+                .register(registry);
+        Gauge.builder("auth.bcrypt.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("auth.bcrypt.queued", executor, e -> e.getQueue().size()).register(registry);
+        log.info("Password hashing executor created with {} threads and a queue of {}", threads, queueCapacity);
+    }
+
+    public boolean verifyPassword(String plaintext, String hashedPassword){
+        long start = System.nanoTime();
+        try {
+            return run(() -> PasswordHasher.verifyPassword(plaintext, hashedPassword));
+        }finally {
+            verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public String hashPassword(String plaintext){
+        return run(() -> PasswordHasher.hashPassword(plaintext));
+    }
+
+    public int getActiveCount(){
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedCount(){
+        return executor.getQueue().size();
+    }
+
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> task){
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        }catch(RejectedExecutionException e){
+            rejected.increment();
+            log.info("Password hashing rejected - {} running, {} queued", executor.getActiveCount(),
+                    executor.getQueue().size());
+            throw e;
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        }catch(TimeoutException e){
+            future.cancel(true);
+            rejected.increment();
+            throw new RejectedExecutionException("Password hashing did not complete within " + timeoutMs + "ms");
+        }catch(InterruptedException e){
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for password hashing");
+        }catch(ExecutionException e){
+            // IllegalArgumentException etc. from PasswordHasher - rethrow as-is
+            if(e.getCause() instanceof RuntimeException re){
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.CacheStats;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.utils.BoundedCache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-through cache used by ProductService to avoid re-querying the (small, read-heavy) product catalog
+// Single products are cached by product code, the full product list and summary list are cached as one entry each
+// Loads read getGeneration() before querying and pass it to the put - if the cache was invalidated in between, the
+// query may have read rows from before the change, so its result is not cached
+public class ProductCache {
+    private static final String ALL_PRODUCTS = "all";
+
+    private final boolean enabled;
+    private final BoundedCache<String, Product> products;
+    private final BoundedCache<String, List<Product>> lists;
+    private final BoundedCache<String, List<ProductSummary>> summaryLists;
+    // Incremented by every invalidation
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductCache(boolean enabled, int maxSize, long ttlMillis, BoundedCache.EvictionPolicy policy){
+        this.enabled = enabled;
+        this.products = new BoundedCache<>(maxSize, ttlMillis, policy);
+        this.lists = new BoundedCache<>(1, ttlMillis, policy);
+        this.summaryLists = new BoundedCache<>(1, ttlMillis, policy);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public Product getProduct(String productCode){
+        return enabled ? products.get(productCode) : null;
+    }
+
+    public long getGeneration(){
+        return generation.get();
+    }
+
+    public void putProduct(Product p, long loadGeneration){
+        if(enabled && p != null){
+            products.put(p.getProductCode(), p);
+            // Checked after the put, so an invalidation running at the same time either sees the entry and removes
+            // it, or has already moved the generation on and it is removed here
+            if(generation.get() != loadGeneration){
+                products.invalidate(p.getProductCode());
+            }
+        }
+    }
+
+    public List<Product> getAllProducts(){
+        return enabled ? lists.get(ALL_PRODUCTS) : null;
+    }
+
+    public void putAllProducts(List<Product> all, long loadGeneration){
+        if(enabled && all != null){
+            // Store an unmodifiable copy so callers can't change the cached list
+            lists.put(ALL_PRODUCTS, List.copyOf(all));
+            if(generation.get() != loadGeneration){
+                lists.invalidateAll();
+            }
+        }
+    }
+
+    public List<ProductSummary> getAllSummaries(){
+        return enabled ? summaryLists.get(ALL_PRODUCTS) : null;
+    }
+
+    public void putAllSummaries(List<ProductSummary> all, long loadGeneration){
+        if(enabled && all != null){
+            summaryLists.put(ALL_PRODUCTS, List.copyOf(all));
+            if(generation.get() != loadGeneration){
+                summaryLists.invalidateAll();
+            }
+        }
+    }
+
+    // Called whenever a product is added or removed - the cached list and those products are now stale
+    public void invalidate(Collection<String> productCodes){
+        if(!enabled || productCodes.isEmpty()){
+            return;
+        }
+        // Before the entries are removed, so a put racing with this is always caught by one or the other
+        generation.incrementAndGet();
+        lists.invalidateAll();
+        summaryLists.invalidateAll();
+        for(String code : productCodes){
+            products.invalidate(code);
+        }
+    }
+
+    public void invalidateAll(){
+        generation.incrementAndGet();
+        lists.invalidateAll();
+        summaryLists.invalidateAll();
+        products.invalidateAll();
+    }
+
+    public CacheStats getStats(){
+        return CacheStats.builder()
+                .enabled(enabled)
+                .policy(products.getPolicy().name())
+                .maxSize(products.getMaxSize())
+                .size(products.size())
+                .hits(products.getHits() + lists.getHits() + summaryLists.getHits())
+                .misses(products.getMisses() + lists.getMisses() + summaryLists.getMisses())
+                .evictions(products.getEvictions() + lists.getEvictions() + summaryLists.getEvictions())
+                .expirations(products.getExpirations() + lists.getExpirations() + summaryLists.getExpirations())
+                .build();
+    }
+}
@@ -0,0 +1,344 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.FacetedProductPage;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductFilter;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.entities.ValueRange;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * In-memory bitmap index over product fields, used to answer faceted filters without a SQL scan.
+ * <p>
+ * Every product is given a slot number, and each index is a BitSet with the bits of the matching slots set:
+ * <ul>
+ *     <li>productLine, productVendor and productScale - one BitSet per distinct value</li>
+ *     <li>buyPrice, msrp and quantityInStock - the slots sorted by value, so a range is two binary searches and then
+ *     a run of bits to set</li>
+ * </ul>
+ * A filter is the OR of the chosen values within each field, ANDed across fields, and a facet count is the
+ * cardinality of a value's BitSet ANDed with the other fields' criteria - all word-at-a-time operations over a few
+ * longs per 64 products. Results are ordered by product code.
+ * <p>
+ * Slots freed by removed products are reused by later adds. The sorted orders are rebuilt after each change, so
+ * addAll() is preferred over repeated add() calls for many products.
+ */
+public class ProductFacetIndex {
+    public static final String PRODUCT_LINE = "productLine";
+    public static final String PRODUCT_VENDOR = "productVendor";
+    public static final String PRODUCT_SCALE = "productScale";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // The product held in each slot (null for a free slot) and the slot of each product code
+    private final List<Product> slots = new ArrayList<>();
+    private final Map<String, Integer> slotByCode = new HashMap<>();
+    private final BitSet occupied = new BitSet();
+    private final Map<String, BitSet> lines = new HashMap<>();
+    private final Map<String, BitSet> vendors = new HashMap<>();
+    private final Map<String, BitSet> scales = new HashMap<>();
+    // Rebuilt after every change
+    private int[] byCode = new int[0];
+    private SortedColumn buyPrices = SortedColumn.EMPTY;
+    private SortedColumn msrps = SortedColumn.EMPTY;
+    private SortedColumn stock = SortedColumn.EMPTY;
+    private volatile boolean ready = false;
+
+    public boolean isReady(){
+        return ready;
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return slotByCode.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replace the whole index with the supplied products
+    public void rebuild(Collection<Product> all){
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            slotByCode.clear();
+            occupied.clear();
+            lines.clear();
+            vendors.clear();
+            scales.clear();
+            for(Product p : all){
+                removeInternal(p.getProductCode());
+                addInternal(p);
+            }
+            rebuildOrders();
+            ready = true;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(Product p){
+        addAll(List.of(p));
+    }
+
+    public void addAll(Collection<Product> products){
+        if(products.isEmpty()){
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for(Product p : products){
+                removeInternal(p.getProductCode());
+                addInternal(p);
+            }
+            rebuildOrders();
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<String> productCodes){
+        if(productCodes.isEmpty()){
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for(String code : productCodes){
+                removeInternal(code);
+            }
+            rebuildOrders();
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the products matching the filter, with facet counts and value ranges for the matches.
+     * @param offset How many matching products (in product code order) to skip
+     * @param limit The most products to return
+     * @throws IllegalArgumentException where a minimum is above its maximum
+     */
+    public FacetedProductPage filter(ProductFilter filter, int offset, int limit){
+        checkRange(filter.getMinBuyPrice(), filter.getMaxBuyPrice(), "buyPrice");
+        checkRange(filter.getMinMsrp(), filter.getMaxMsrp(), "msrp");
+        Double minStock = toDouble(filter.getMinStock());
+        Double maxStock = toDouble(filter.getMaxStock());
+        checkRange(minStock, maxStock, "quantityInStock");
+
+        lock.readLock().lock();
+        try {
+            // Numeric criteria apply to every facet count, so they are combined once up front
+            BitSet numeric = (BitSet) occupied.clone();
+            andRange(numeric, buyPrices, filter.getMinBuyPrice(), filter.getMaxBuyPrice());
+            andRange(numeric, msrps, filter.getMinMsrp(), filter.getMaxMsrp());
+            andRange(numeric, stock, minStock, maxStock);
+            BitSet line = anyOf(lines, filter.getProductLines());
+            BitSet vendor = anyOf(vendors, filter.getProductVendors());
+            BitSet scale = anyOf(scales, filter.getProductScales());
+
+            BitSet matches = and(numeric, line, vendor, scale);
+            Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+            facets.put(PRODUCT_LINE, counts(lines, and(numeric, vendor, scale)));
+            facets.put(PRODUCT_VENDOR, counts(vendors, and(numeric, line, scale)));
+            facets.put(PRODUCT_SCALE, counts(scales, and(numeric, line, vendor)));
+
+            List<ProductSummary> page = new ArrayList<>(Math.min(limit, 128));
+            int skipped = 0;
+            for(int i = 0; i < byCode.length && page.size() < limit; i++){
+                int slot = byCode[i];
+                if(matches.get(slot) && skipped++ >= offset){
+                    page.add(ProductSummary.from(slots.get(slot)));
+                }
+            }
+            return new FacetedProductPage(matches.cardinality(), offset, page, facets, ranges(matches));
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Double toDouble(Integer value){
+        return value == null ? null : value.doubleValue();
+    }
+
+    private static void checkRange(Double min, Double max, String field){
+        if(min != null && max != null && min > max){
+            throw new IllegalArgumentException("Minimum " + field + " cannot be above the maximum");
+        }
+    }
+
+    private static void andRange(BitSet bits, SortedColumn column, Double min, Double max){
+        if(min != null || max != null){
+            bits.and(column.range(min, max));
+        }
+    }
+
+    // Slots with any of the values - null when no values were given (the field isn't filtered)
+    private static BitSet anyOf(Map<String, BitSet> index, Set<String> values){
+        if(values == null || values.isEmpty()){
+            return null;
+        }
+        BitSet bits = new BitSet();
+        for(String value : values){
+            BitSet valueBits = index.get(value);
+            if(valueBits != null){
+                bits.or(valueBits);
+            }
+        }
+        return bits;
+    }
+
+    private static BitSet and(BitSet base, BitSet... others){
+        BitSet result = (BitSet) base.clone();
+        for(BitSet other : others){
+            if(other != null){
+                result.and(other);
+            }
+        }
+        return result;
+    }
+
+    // Matching products per value, leaving out values with none - sorted by value
+    private static Map<String, Integer> counts(Map<String, BitSet> index, BitSet base){
+        Map<String, Integer> counts = new TreeMap<>();
+        for(Map.Entry<String, BitSet> entry : index.entrySet()){
+            if(!entry.getValue().intersects(base)){
+                continue;
+            }
+            BitSet both = (BitSet) entry.getValue().clone();
+            both.and(base);
+            counts.put(entry.getKey(), both.cardinality());
+        }
+        return counts;
+    }
+
+    private Map<String, ValueRange> ranges(BitSet matches){
+        Map<String, ValueRange> ranges = new LinkedHashMap<>();
+        if(matches.isEmpty()){
+            return ranges;
+        }
+        ranges.put("buyPrice", range(matches, Product::getBuyPrice));
+        ranges.put("msrp", range(matches, Product::getMsrp));
+        ranges.put("quantityInStock", range(matches, Product::getQuantityInStock));
+        return ranges;
+    }
+
+    private ValueRange range(BitSet matches, ToDoubleFunction<Product> field){
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for(int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)){
+            double value = field.applyAsDouble(slots.get(slot));
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return new ValueRange(min, max);
+    }
+
+    private void addInternal(Product p){
+        int slot = occupied.nextClearBit(0);
+        if(slot == slots.size()){
+            slots.add(p);
+        }else{
+            slots.set(slot, p);
+        }
+        slotByCode.put(p.getProductCode(), slot);
+        occupied.set(slot);
+        lines.computeIfAbsent(p.getProductLine(), v -> new BitSet()).set(slot);
+        vendors.computeIfAbsent(p.getProductVendor(), v -> new BitSet()).set(slot);
+        scales.computeIfAbsent(p.getProductScale(), v -> new BitSet()).set(slot);
+    }
+
+    private void removeInternal(String code){
+        Integer slot = slotByCode.remove(code);
+        if(slot == null){
+            return;
+        }
+        Product p = slots.get(slot);
+        slots.set(slot, null);
+        occupied.clear(slot);
+        clearBit(lines, p.getProductLine(), slot);
+        clearBit(vendors, p.getProductVendor(), slot);
+        clearBit(scales, p.getProductScale(), slot);
+    }
+
+    private static void clearBit(Map<String, BitSet> index, String value, int slot){
+        BitSet bits = index.get(value);
+        if(bits != null){
+            bits.clear(slot);
+            if(bits.isEmpty()){
+                index.remove(value);
+            }
+        }
+    }
+
+    private void rebuildOrders(){
+        List<Integer> live = new ArrayList<>(slotByCode.values());
+        live.sort(Comparator.comparing(slot -> slots.get(slot).getProductCode()));
+        byCode = live.stream().mapToInt(Integer::intValue).toArray();
+        buyPrices = SortedColumn.of(live, slots, Product::getBuyPrice);
+        msrps = SortedColumn.of(live, slots, Product::getMsrp);
+        stock = SortedColumn.of(live, slots, Product::getQuantityInStock);
+    }
+
+    // The slots of one numeric field in ascending order of value
+    private static final class SortedColumn {
+        static final SortedColumn EMPTY = new SortedColumn(new double[0], new int[0]);
+
+        private final double[] values;
+        private final int[] slots;
+
+        private SortedColumn(double[] values, int[] slots){
+            this.values = values;
+            this.slots = slots;
+        }
+
+        static SortedColumn of(List<Integer> live, List<Product> products, ToDoubleFunction<Product> field){
+            List<Integer> sorted = new ArrayList<>(live);
+            sorted.sort(Comparator.comparingDouble(slot -> field.applyAsDouble(products.get(slot))));
+            double[] values = new double[sorted.size()];
+            int[] slots = new int[sorted.size()];
+            for(int i = 0; i < slots.length; i++){
+                slots[i] = sorted.get(i);
+                values[i] = field.applyAsDouble(products.get(slots[i]));
+            }
+            return new SortedColumn(values, slots);
+        }
+
+        // Slots with min <= value <= max (either bound may be null)
+        BitSet range(Double min, Double max){
+            int from = min == null ? 0 : firstIndexAtLeast(min, false);
+            int to = max == null ? values.length : firstIndexAtLeast(max, true);
+            BitSet bits = new BitSet();
+            for(int i = from; i < to; i++){
+                bits.set(slots[i]);
+            }
+            return bits;
+        }
+
+        // Index of the first value >= bound (or > bound when exclusive) - values.length if there is none
+        private int firstIndexAtLeast(double bound, boolean exclusive){
+            int low = 0;
+            int high = values.length;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(values[mid] < bound || (exclusive && values[mid] == bound)){
+                    low = mid + 1;
+                }else{
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over product text, used to answer keyword searches without a LIKE '%keyword%' scan.
+ * <p>
+ * Two indexes are kept:
+ * <ul>
+ *     <li>a trigram index - every 3-character sequence of the (lower-cased) text maps to the products containing
+ *     it. A substring search intersects the postings for the keyword's trigrams and then checks each candidate,
+ *     so it returns exactly the products whose text contains the keyword (ignoring case), as LIKE does.</li>
+ *     <li>a word index - sorted so that whole-word and prefix searches can be answered from it directly.</li>
+ * </ul>
+ * Only product descriptions are indexed unless the index is created with includeNamesAndVendors set.
+ * Results are always ordered by product code.
+ */
+public class ProductSearchIndex {
+    public enum MatchMode {
+        // Keyword appears anywhere in the text (same as productDescription LIKE '%keyword%')
+        SUBSTRING,
+        // Every word of the keyword starts a word in the text
+        PREFIX,
+        // Every word of the keyword is a whole word in the text
+        WORD
+    }
+
+    private static final int GRAM = 3;
+    // Separates the indexed fields so a substring match can't span two of them
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    private final boolean includeNamesAndVendors;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Product> products = new TreeMap<>();
+    private final Map<String, String> texts = new HashMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final TreeMap<String, Set<String>> words = new TreeMap<>();
+    private volatile boolean ready = false;
+
+    public ProductSearchIndex(boolean includeNamesAndVendors){
+        this.includeNamesAndVendors = includeNamesAndVendors;
+    }
+
+    public boolean isReady(){
+        return ready;
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return products.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replace the whole index with the supplied products
+    public void rebuild(Collection<Product> all){
+        lock.writeLock().lock();
+        try {
+            products.clear();
+            texts.clear();
+            trigrams.clear();
+            words.clear();
+            for(Product p : all){
+                addInternal(p);
+            }
+            ready = true;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(Product p){
+        lock.writeLock().lock();
+        try {
+            removeInternal(p.getProductCode());
+            addInternal(p);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<String> productCodes){
+        lock.writeLock().lock();
+        try {
+            for(String code : productCodes){
+                removeInternal(code);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Product> search(String keyword, MatchMode mode){
+        String query = keyword.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Set<String> codes = switch (mode) {
+                case SUBSTRING -> substringMatches(query);
+                case PREFIX -> wordMatches(query, true);
+                case WORD -> wordMatches(query, false);
+            };
+
+            List<Product> results = new ArrayList<>(codes.size());
+            for(String code : new TreeSet<>(codes)){
+                results.add(products.get(code));
+            }
+            return results;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<String> substringMatches(String query){
+        Collection<String> candidates;
+        if(query.length() < GRAM){
+            // Too short to use the trigram index - check every product
+            candidates = texts.keySet();
+        }else{
+            candidates = intersectPostings(grams(query), trigrams);
+        }
+
+        Set<String> matches = new HashSet<>();
+        for(String code : candidates){
+            if(texts.get(code).contains(query)){
+                matches.add(code);
+            }
+        }
+        return matches;
+    }
+
+    private Set<String> wordMatches(String query, boolean prefix){
+        Set<String> queryWords = tokenize(query);
+        if(queryWords.isEmpty()){
+            return Set.of();
+        }
+
+        Set<String> matches = null;
+        for(String queryWord : queryWords){
+            Set<String> codesForWord = new HashSet<>();
+            if(prefix){
+                // Every indexed word in [queryWord, queryWord + max char) starts with queryWord
+                NavigableMap<String, Set<String>> range = words.subMap(queryWord, true,
+                        queryWord + Character.MAX_VALUE, false);
+                for(Set<String> postings : range.values()){
+                    codesForWord.addAll(postings);
+                }
+            }else{
+                codesForWord.addAll(words.getOrDefault(queryWord, Set.of()));
+            }
+
+            if(matches == null){
+                matches = codesForWord;
+            }else{
+                matches.retainAll(codesForWord);
+            }
+            if(matches.isEmpty()){
+                break;
+            }
+        }
+        return matches;
+    }
+
+    // Products present in every posting list for the supplied terms (smallest list first)
+    private static Set<String> intersectPostings(Set<String> terms, Map<String, Set<String>> index){
+        List<Set<String>> postings = new ArrayList<>(terms.size());
+        for(String term : terms){
+            Set<String> posting = index.get(term);
+            if(posting == null){
+                return Set.of();
+            }
+            postings.add(posting);
+        }
+        postings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<String> result = new HashSet<>(postings.get(0));
+        for(int i = 1; i < postings.size() && !result.isEmpty(); i++){
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    private void addInternal(Product p){
+        String code = p.getProductCode();
+        String text = indexedText(p);
+        products.put(code, p);
+        texts.put(code, text);
+        for(String gram : grams(text)){
+            trigrams.computeIfAbsent(gram, g -> new HashSet<>()).add(code);
+        }
+        for(String word : tokenize(text)){
+            words.computeIfAbsent(word, w -> new HashSet<>()).add(code);
+        }
+    }
+
+    private void removeInternal(String code){
+        String text = texts.remove(code);
+        products.remove(code);
+        if(text == null){
+            return;
+        }
+        for(String gram : grams(text)){
+            removePosting(trigrams, gram, code);
+        }
+        for(String word : tokenize(text)){
+            removePosting(words, word, code);
+        }
+    }
+
+    private static void removePosting(Map<String, Set<String>> index, String term, String code){
+        Set<String> posting = index.get(term);
+        if(posting != null){
+            posting.remove(code);
+            if(posting.isEmpty()){
+                index.remove(term);
+            }
+        }
+    }
+
+    private String indexedText(Product p){
+        StringBuilder text = new StringBuilder(p.getProductDescription());
+        if(includeNamesAndVendors){
+            text.append(FIELD_SEPARATOR).append(p.getProductName())
+                    .append(FIELD_SEPARATOR).append(p.getProductVendor());
+        }
+        return text.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String text){
+        Set<String> grams = new HashSet<>();
+        for(int i = 0; i + GRAM <= text.length(); i++){
+            String gram = text.substring(i, i + GRAM);
+            if(gram.indexOf(FIELD_SEPARATOR) == -1){
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> tokenize(String text){
+        Set<String> tokens = new HashSet<>();
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++){
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(wordChar && start == -1){
+                start = i;
+            }else if(!wordChar && start != -1){
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,21 +1,151 @@
 package web_patterns.samplespring2025.services;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import web_patterns.samplespring2025.entities.CacheStats;
+import web_patterns.samplespring2025.entities.FacetedProductPage;
+import web_patterns.samplespring2025.entities.ImportReport;
+import web_patterns.samplespring2025.entities.ImportResult;
+import web_patterns.samplespring2025.entities.ImportStatus;
 import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductBatch;
+import web_patterns.samplespring2025.entities.ProductFilter;
+import web_patterns.samplespring2025.entities.ProductPage;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.entities.ProductSummaryPage;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
 import web_patterns.samplespring2025.persistence.ProductDao;
+import web_patterns.samplespring2025.utils.BatchLoader;
+import web_patterns.samplespring2025.utils.SingleFlight;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Slf4j
 // Mark this class as a service layer - spring boot will know to load it and pass it to controllers where appropriate
 @Service
 public class ProductService {
+    // Key used for the single-flight load of the full product list
+    private static final String ALL_PRODUCTS = "all";
+    // Key used for the single-flight rebuild of the search and facet indexes
+    private static final String INDEXES = "indexes";
+    // Error codes reported by MySQL for rows rejected during a bulk import
+    private static final int DUPLICATE_KEY_ERROR_CODE = 1062;
+    private static final int FOREIGN_KEY_CONSTRAINT_FAILS = 1452;
+    // Largest page that can be requested from getProductsPage()
+    public static final int MAX_PAGE_SIZE = 100;
+    // Most codes accepted by one getProductsByCodes() call
+    public static final int MAX_BATCH_CODES = 500;
+
     private ProductDao productDao;
+    private ProductCache cache;
+    private ProductSearchIndex searchIndex;
+    private ProductFacetIndex facetIndex;
+    private Validator validator;
+    private CatalogVersion catalogVersion;
+    // Number of rows sent to the database in each batch/transaction during a bulk import
+    private int importChunkSize;
+    // Concurrent cache misses for the same product (or the full list) share one database query
+    private final SingleFlight<String, Product> productLoads = new SingleFlight<>();
+    private final SingleFlight<String, List<Product>> allProductLoads = new SingleFlight<>();
+    // Searches and filters arriving before the indexes are built share one rebuild instead of each reloading every
+    // product
+    private final SingleFlight<String, Void> indexBuilds = new SingleFlight<>();
+    // Held by a rebuild from reading the products until both indexes are replaced, and by every add/remove applied to
+    // the indexes after a write - an index update made while a rebuild runs waits and is applied on top of it, so a
+    // rebuild that read the products before the write can't wipe it out
+    private final ReentrantLock indexUpdates = new ReentrantLock();
+    // Single-product cache misses arriving while another lookup is running are looked up together with one IN (...)
+    // query - a lone miss is looked up straight away
+    // (null when product.lookup.batchWindowMs is 0 - each miss is then its own query)
+    private final BatchLoader<String, Product, SQLException> productBatcher;
 
-    public ProductService(ProductDao dao){
+    public ProductService(ProductDao dao, ProductCache cache, ProductSearchIndex searchIndex,
+                          ProductFacetIndex facetIndex, Validator validator, CatalogVersion catalogVersion,
+                          Environment env){
         this.productDao = dao;
+        this.cache = cache;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.validator = validator;
+        this.catalogVersion = catalogVersion;
+        this.importChunkSize = Math.max(1, env.getProperty("product.import.chunkSize", Integer.class, 500));
+        long lookupBatchWindowMs = env.getProperty("product.lookup.batchWindowMs", Long.class, 2L);
+        int lookupMaxBatchSize = env.getProperty("product.lookup.maxBatchSize", Integer.class, 100);
+        this.productBatcher = lookupBatchWindowMs > 0
+                ? new BatchLoader<>(this::loadProducts, lookupBatchWindowMs, Math.max(1, lookupMaxBatchSize))
+                : null;
+    }
+
+    // Build the keyword search and facet indexes once the application has started
+    // If the database isn't available yet, they are built on the first search or filter instead
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex(){
+        try {
+            rebuildSearchIndex();
+        }catch(SQLException | DatabaseUnavailableException e){
+            log.error("Search indexes could not be built at startup. Database error occurred: {}", e.getMessage());
+        }
+    }
+
+    public void rebuildSearchIndex() throws SQLException {
+        indexUpdates.lock();
+        try {
+            // From the primary - a lagging replica could miss a write whose index update has already been applied
+            List<Product> products = productDao.getAllProductsFromPrimary();
+            searchIndex.rebuild(products);
+            facetIndex.rebuild(products);
+            log.info("Search and facet indexes built for {} products", products.size());
+        }finally {
+            indexUpdates.unlock();
+        }
+    }
+
+    // Applies products added and removed by a write that has already committed (see indexUpdates)
+    private void updateIndexes(Collection<Product> added, Collection<String> removed){
+        indexUpdates.lock();
+        try {
+            if(!removed.isEmpty()){
+                searchIndex.remove(removed);
+                facetIndex.remove(removed);
+            }
+            for(Product p : added){
+                searchIndex.add(p);
+            }
+            facetIndex.addAll(added);
+        }finally {
+            indexUpdates.unlock();
+        }
+    }
+
+    // Build the indexes if they aren't ready yet (e.g. the database was down at startup) - one rebuild at a time
+    private void ensureIndexes() throws SQLException {
+        if(searchIndex.isReady() && facetIndex.isReady()){
+            return;
+        }
+        indexBuilds.execute(INDEXES, () -> {
+            // A rebuild may have finished between the check above and this one starting
+            if(!searchIndex.isReady() || !facetIndex.isReady()){
+                rebuildSearchIndex();
+            }
+            return null;
+        });
     }
 
     public void shutdownService(){
@@ -23,7 +153,86 @@ public class ProductService {
     }
 
     public List<Product> getAllProducts() throws SQLException {
-        return productDao.getAllProducts();
+        List<Product> products = cache.getAllProducts();
+        if(products != null){
+            return products;
+        }
+
+        return allProductLoads.execute(ALL_PRODUCTS, () -> {
+            long generation = cache.getGeneration();
+            List<Product> loaded = productDao.getAllProducts();
+            cache.putAllProducts(loaded, generation);
+            return loaded;
+        });
+    }
+
+    /**
+     * Gets one page of products, ordered by product code.
+     * @param cursor The nextCursor from the previous page, or null/blank for the first page
+     * @param limit The number of products per page (1 to MAX_PAGE_SIZE)
+     * @return The page of products, with the cursor for the next page (null if this is the last page)
+     * @throws IllegalArgumentException where the limit is out of range or the cursor is not one issued by this service
+     */
+    public ProductPage getProductsPage(String cursor, int limit) throws SQLException {
+        if(limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        String afterCode = decodeCursor(cursor);
+
+        // Ask for one extra row to find out whether there is another page
+        List<Product> products = productDao.getProductsAfterCode(afterCode, limit + 1);
+        String nextCursor = null;
+        if(products.size() > limit){
+            products = products.subList(0, limit);
+            nextCursor = encodeCursor(products.get(limit - 1).getProductCode());
+        }
+        return new ProductPage(products, nextCursor);
+    }
+
+    // Summary (no description) equivalents of getAllProducts() and getProductsPage() for list views
+    public List<ProductSummary> getAllProductSummaries() throws SQLException {
+        List<ProductSummary> summaries = cache.getAllSummaries();
+        if(summaries != null){
+            return summaries;
+        }
+
+        // Reuse the full list if it's already cached rather than going back to the database
+        long generation = cache.getGeneration();
+        List<Product> products = cache.getAllProducts();
+        summaries = products != null ? toSummaries(products) : productDao.getAllProductSummaries();
+        cache.putAllSummaries(summaries, generation);
+        return summaries;
+    }
+
+    public ProductSummaryPage getProductSummariesPage(String cursor, int limit) throws SQLException {
+        if(limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        String afterCode = decodeCursor(cursor);
+
+        List<ProductSummary> summaries = productDao.getProductSummariesAfterCode(afterCode, limit + 1);
+        String nextCursor = null;
+        if(summaries.size() > limit){
+            summaries = summaries.subList(0, limit);
+            nextCursor = encodeCursor(summaries.get(limit - 1).getProductCode());
+        }
+        return new ProductSummaryPage(summaries, nextCursor);
+    }
+
+    // Cursors are opaque to clients - they wrap the last product code seen on the page
+    private static String encodeCursor(String productCode){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(productCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor){
+        if(cursor == null || cursor.isBlank()){
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        }catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
     }
 
     public Product getProductByCode(String prodCode) throws SQLException{
@@ -33,10 +242,98 @@ public class ProductService {
         }
 
         log.info("Product retrieval: {}", prodCode);
-        return productDao.getProductByCode(prodCode);
+        Product product = cache.getProduct(prodCode);
+        if(product != null){
+            return product;
+        }
+
+        return productLoads.execute(prodCode, () -> {
+            if(productBatcher != null){
+                // loadProducts() caches whatever the batch finds
+                return productBatcher.load(prodCode);
+            }
+            long generation = cache.getGeneration();
+            Product loaded = productDao.getProductByCode(prodCode);
+            cache.putProduct(loaded, generation);
+            return loaded;
+        });
+    }
+
+    /**
+     * Looks up many products at once - e.g. every line of a cart or order - using the cache where possible and
+     * chunked IN (...) queries for the rest.
+     * @param prodCodes The codes to look up. Duplicates are ignored.
+     * @return The products found, in the order requested, and the codes that don't exist
+     * @throws IllegalArgumentException where a code is blank or more than MAX_BATCH_CODES codes are requested
+     */
+    public ProductBatch getProductsByCodes(List<String> prodCodes) throws SQLException {
+        LinkedHashSet<String> codes = new LinkedHashSet<>();
+        for(String code : prodCodes){
+            if(code == null || code.isBlank()){
+                throw new IllegalArgumentException("Product codes cannot be blank");
+            }
+            codes.add(code);
+        }
+        if(codes.size() > MAX_BATCH_CODES){
+            throw new IllegalArgumentException("At most " + MAX_BATCH_CODES +
+                    " product codes can be requested at once");
+        }
+
+        Map<String, Product> found = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for(String code : codes){
+            Product cached = cache.getProduct(code);
+            if(cached != null){
+                found.put(code, cached);
+            }else{
+                uncached.add(code);
+            }
+        }
+        found.putAll(loadProducts(uncached));
+
+        List<Product> products = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for(String code : codes){
+            Product p = found.get(code);
+            if(p != null){
+                products.add(p);
+            }else{
+                missing.add(code);
+            }
+        }
+        return new ProductBatch(products, missing);
+    }
+
+    // Loads products by code from the database and caches them - used by the batch lookup and the lookup batcher
+    private Map<String, Product> loadProducts(Collection<String> codes) throws SQLException {
+        long generation = cache.getGeneration();
+        Map<String, Product> loaded = new HashMap<>();
+        for(Product p : productDao.getProductsByCodes(codes)){
+            loaded.put(p.getProductCode(), p);
+            cache.putProduct(p, generation);
+        }
+        return loaded;
+    }
+
+    // Called after products change in the database. Loads already running may have read the old rows: their results
+    // aren't cached (see ProductCache), and later lookups start fresh loads rather than waiting for theirs.
+    private void invalidate(Collection<String> codes){
+        // Nothing changed - keep the cached lists and any loads in flight
+        if(codes.isEmpty()){
+            return;
+        }
+        cache.invalidate(codes);
+        allProductLoads.forget(ALL_PRODUCTS);
+        for(String code : codes){
+            productLoads.forget(code);
+        }
     }
 
     public List<Product> getProductsByKeyword(String keyword) throws SQLException {
+        return getProductsByKeyword(keyword, ProductSearchIndex.MatchMode.SUBSTRING);
+    }
+
+    public List<Product> getProductsByKeyword(String keyword, ProductSearchIndex.MatchMode mode) throws SQLException {
         if(keyword == null){
             throw new IllegalArgumentException("Cannot search for null keyword");
         }
@@ -45,36 +342,73 @@ public class ProductService {
             throw new IllegalArgumentException("Keyword must be provided");
         }
 
-        log.info("Keyword search for: {}", keyword);
-        return productDao.getAllProductsContainingKeyword(keyword);
+        log.info("Keyword search for: {} ({})", keyword, mode);
+        ensureIndexes();
+        return searchIndex.search(keyword, mode);
     }
 
-    public List<Product> deleteProductsByKeyword(String keyword) throws SQLException {
-        List<Product> toBeDeleted = getProductsByKeyword(keyword);
+    // The search index already holds the matching products, so summaries are built from them without a query
+    public List<ProductSummary> getProductSummariesByKeyword(String keyword, ProductSearchIndex.MatchMode mode)
+            throws SQLException {
+        return toSummaries(getProductsByKeyword(keyword, mode));
+    }
 
-        int count = 0;
-        Product currentProduct = null;
-        for(count = 0; count < toBeDeleted.size(); count++){
-            try {
-                currentProduct = toBeDeleted.get(count);
-                productDao.deleteProductByCode(currentProduct.getProductCode());
-            }catch(SQLException e){
-                log.error("Failed to delete product with code {}", currentProduct.getProductCode());
-                break;
-            }
+    /**
+     * Filters products by line, vendor, scale, price and stock using the in-memory facet index, with facet counts
+     * for narrowing the results further.
+     * @param offset How many matching products (in product code order) to skip
+     * @param limit The number of products per page (1 to MAX_PAGE_SIZE)
+     * @throws IllegalArgumentException where the offset or limit is out of range, or a minimum is above its maximum
+     */
+    public FacetedProductPage filterProducts(ProductFilter filter, int offset, int limit) throws SQLException {
+        if(limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
         }
+        if(offset < 0){
+            throw new IllegalArgumentException("Offset cannot be negative");
+        }
+        ensureIndexes();
+        return facetIndex.filter(filter, offset, limit);
+    }
 
-        if(count != toBeDeleted.size()){
-            for (int i = 0; i < count; i++) {
-                productDao.addProduct(toBeDeleted.get(i));
-            }
+    private static List<ProductSummary> toSummaries(List<Product> products){
+        List<ProductSummary> summaries = new ArrayList<>(products.size());
+        for(Product p : products){
+            summaries.add(ProductSummary.from(p));
+        }
+        return summaries;
+    }
+
+    public List<Product> deleteProductsByKeyword(String keyword) throws SQLException {
+        if(keyword == null){
+            throw new IllegalArgumentException("Cannot delete by null keyword");
+        }
 
-            throw new SQLException("Failed to delete product with code " + currentProduct.getProductCode() + ". " +
-                    "Action rolled back - no products containing keyword " + keyword + " were deleted");
+        if(keyword.isBlank()){
+            throw new IllegalArgumentException("Keyword must be provided");
+        }
 
+        List<Product> deleted;
+        try {
+            // One transaction - either every matching product is deleted or none are
+            deleted = productDao.deleteProductsContainingKeyword(keyword);
+        }catch(SQLException e){
+            log.error("Failed to delete products containing keyword {}", keyword);
+            throw new SQLException("Failed to delete products containing keyword " + keyword + ". " +
+                    "Action rolled back - no products containing keyword " + keyword + " were deleted",
+                    e.getSQLState(), e.getErrorCode(), e);
         }
 
-        return toBeDeleted;
+        List<String> codes = deleted.stream().map(Product::getProductCode).collect(Collectors.toList());
+        invalidate(codes);
+        updateIndexes(List.of(), codes);
+        // Bumped once the cache is cleared and loads from before the delete can no longer fill it or be joined, so
+        // a response tagged with the new version is built from data read after the delete
+        if(!codes.isEmpty()){
+            catalogVersion.bump();
+        }
+        log.info("Deleted {} products containing keyword \"{}\": {}", deleted.size(), keyword, codes);
+        return deleted;
     }
 
     public boolean addProduct(Product p) throws SQLException {
@@ -84,6 +418,9 @@ public class ProductService {
         try {
             boolean added = productDao.addProduct(p);
             if(added){
+                invalidate(List.of(p.getProductCode()));
+                updateIndexes(List.of(p), List.of());
+                catalogVersion.bump();
                 log.info("Product {} added. Details: \"{}\"", p.getProductCode(), p);
             }else{
                 log.info("Attempted product add failed. Product with code: \"{}\" could not be added.", p.getProductCode());
@@ -94,4 +431,154 @@ public class ProductService {
             throw e;
         }
     }
+
+    /**
+     * Imports many products, validating each one and inserting them in batches of importChunkSize rows.
+     * Each batch is its own transaction, so a bad row only affects itself and earlier batches stay committed even
+     * if a later one fails.
+     * @param products The products to import. next() may throw an IllegalArgumentException for a row that could
+     *                 not be read, which is reported as INVALID.
+     * @return The outcome of every row, in the order supplied
+     */
+    public ImportReport importProducts(Iterator<Product> products){
+        List<ImportResult> results = new ArrayList<>();
+        List<Product> chunk = new ArrayList<>(importChunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(importChunkSize);
+
+        int index = 0;
+        while(products.hasNext()){
+            int row = index++;
+            Product p;
+            try {
+                p = products.next();
+            }catch(IllegalArgumentException e){
+                results.add(new ImportResult(row, null, ImportStatus.INVALID, e.getMessage()));
+                continue;
+            }
+
+            String problems = validate(p);
+            if(problems != null){
+                results.add(new ImportResult(row, p == null ? null : p.getProductCode(), ImportStatus.INVALID,
+                        problems));
+                continue;
+            }
+
+            chunk.add(p);
+            chunkIndexes.add(row);
+            if(chunk.size() == importChunkSize){
+                results.addAll(insertChunk(chunk, chunkIndexes));
+                chunk.clear();
+                chunkIndexes.clear();
+            }
+        }
+        results.addAll(insertChunk(chunk, chunkIndexes));
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+
+        ImportReport report = summarise(results);
+        log.info("Bulk import of {} products: {} inserted, {} duplicates, {} foreign key failures, {} invalid, {} failed",
+                report.getTotal(), report.getInserted(), report.getDuplicates(), report.getForeignKeyFailures(),
+                report.getInvalid(), report.getFailed());
+        return report;
+    }
+
+    // Returns a description of why the product is invalid, or null if it passes the entity's validation annotations
+    private String validate(Product p){
+        if(p == null){
+            return "Product cannot be null";
+        }
+        Set<ConstraintViolation<Product>> violations = validator.validate(p);
+        if(violations.isEmpty()){
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private List<ImportResult> insertChunk(List<Product> chunk, List<Integer> indexes){
+        List<ImportResult> results = new ArrayList<>(chunk.size());
+        if(chunk.isEmpty()){
+            return results;
+        }
+
+        int[] codes;
+        try {
+            codes = productDao.addProducts(chunk);
+        }catch(SQLException | DatabaseUnavailableException e){
+            log.error("Bulk import batch of {} products failed. Database error occurred: {}", chunk.size(),
+                    e.getMessage());
+            for(int i = 0; i < chunk.size(); i++){
+                results.add(new ImportResult(indexes.get(i), chunk.get(i).getProductCode(), ImportStatus.FAILED,
+                        "Database error occurred."));
+            }
+            return results;
+        }
+
+        List<Product> inserted = new ArrayList<>();
+        for(int i = 0; i < chunk.size(); i++){
+            Product p = chunk.get(i);
+            ImportStatus status = switch (codes[i]) {
+                case 0 -> ImportStatus.INSERTED;
+                case DUPLICATE_KEY_ERROR_CODE -> ImportStatus.DUPLICATE;
+                case FOREIGN_KEY_CONSTRAINT_FAILS -> ImportStatus.FOREIGN_KEY_FAILURE;
+                default -> ImportStatus.FAILED;
+            };
+            String message = switch (status) {
+                case INSERTED -> null;
+                case DUPLICATE -> "Product code already exists";
+                case FOREIGN_KEY_FAILURE -> "Foreign key constraint failed.";
+                default -> "Database error occurred (code " + codes[i] + ")";
+            };
+            if(status == ImportStatus.INSERTED){
+                inserted.add(p);
+            }
+            results.add(new ImportResult(indexes.get(i), p.getProductCode(), status, message));
+        }
+        invalidate(inserted.stream().map(Product::getProductCode).toList());
+        updateIndexes(inserted, List.of());
+        if(!inserted.isEmpty()){
+            catalogVersion.bump();
+        }
+        return results;
+    }
+
+    private static ImportReport summarise(List<ImportResult> results){
+        int[] counts = new int[ImportStatus.values().length];
+        for(ImportResult result : results){
+            counts[result.getStatus().ordinal()]++;
+        }
+        return ImportReport.builder()
+                .total(results.size())
+                .inserted(counts[ImportStatus.INSERTED.ordinal()])
+                .duplicates(counts[ImportStatus.DUPLICATE.ordinal()])
+                .foreignKeyFailures(counts[ImportStatus.FOREIGN_KEY_FAILURE.ordinal()])
+                .invalid(counts[ImportStatus.INVALID.ordinal()])
+                .failed(counts[ImportStatus.FAILED.ordinal()])
+                .results(results)
+                .build();
+    }
+
+    // Changes whenever products are added or deleted - used for ETag/Last-Modified on product reads
+    public CatalogVersion getCatalogVersion(){
+        return catalogVersion;
+    }
+
+    public CacheStats getCacheStats(){
+        return cache.getStats();
+    }
+
+    // Exposed for metrics - how many product lookups were served by another request's query
+    public SingleFlight<String, Product> getProductLoads(){
+        return productLoads;
+    }
+
+    public SingleFlight<String, List<Product>> getAllProductLoads(){
+        return allProductLoads;
+    }
+
+    // Null when lookup batching is turned off
+    public BatchLoader<String, Product, SQLException> getProductBatcher(){
+        return productBatcher;
+    }
 }
@@ -0,0 +1,18 @@
+package web_patterns.samplespring2025.services;
+
+// Thrown by SignedTokenService.revoke() when the revocation list is full of tokens that haven't expired yet.
+// The logout is refused rather than forgetting an earlier revocation, which would make that token valid again.
+// Unchecked, so it passes through to the controller, which answers 503.
+public class RevocationListFullException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public RevocationListFullException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // When the first remembered revocation expires and makes room - a sensible Retry-After for clients
+    public long getRetryAfterSeconds(){
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,171 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.CustomerValue;
+import web_patterns.samplespring2025.entities.MonthlySales;
+import web_patterns.samplespring2025.entities.ProductLineSales;
+import web_patterns.samplespring2025.entities.ProductSales;
+import web_patterns.samplespring2025.entities.SaleLine;
+import web_patterns.samplespring2025.entities.SalesReport;
+import web_patterns.samplespring2025.entities.SalesSummary;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Running sales totals per product, product line, month and customer, built by adding order lines one at a time.
+ * <p>
+ * Adding a line is a few map updates, so the totals can be built with one streaming pass over orderdetails and then
+ * kept current by adding only the lines of new orders. Lines must be added in order number order, with all the lines
+ * of an order together (as SalesDao returns them) - that is how orders are counted without remembering which orders
+ * each total has seen.
+ * <p>
+ * Amounts are summed in whole cents so that adding orders one refresh at a time gives exactly the same totals as a
+ * full scan. Not thread-safe: one thread adds lines and hands readers the immutable report from toReport().
+ */
+public class SalesAggregates {
+    private final Totals all = new Totals();
+    private final Map<String, ProductTotals> products = new HashMap<>();
+    private final Map<String, Totals> productLines = new HashMap<>();
+    private final NavigableMap<YearMonth, Totals> months = new TreeMap<>();
+    private final Map<Integer, CustomerTotals> customers = new HashMap<>();
+    private long lines;
+    private int lastOrderNumber;
+
+    /**
+     * @throws IllegalArgumentException where the line belongs to an order numbered below one already added
+     */
+    public void add(SaleLine line){
+        int order = line.getOrderNumber();
+        if(order < lastOrderNumber){
+            throw new IllegalArgumentException("Order " + order + " added after order " + lastOrderNumber +
+                    " - lines must be added in order number order");
+        }
+        lastOrderNumber = order;
+        lines++;
+
+        int quantity = line.getQuantityOrdered();
+        long cents = Math.round(quantity * line.getPriceEach() * 100);
+        all.add(order, quantity, cents);
+
+        ProductTotals product = products.computeIfAbsent(line.getProductCode(), ProductTotals::new);
+        product.name = line.getProductName();
+        product.line = line.getProductLine();
+        product.add(order, quantity, cents);
+
+        productLines.computeIfAbsent(line.getProductLine(), k -> new Totals()).add(order, quantity, cents);
+        months.computeIfAbsent(YearMonth.from(line.getOrderDate()), k -> new Totals()).add(order, quantity, cents);
+
+        CustomerTotals customer = customers.computeIfAbsent(line.getCustomerNumber(), CustomerTotals::new);
+        customer.name = line.getCustomerName();
+        customer.addOrderDate(line.getOrderDate());
+        customer.add(order, quantity, cents);
+    }
+
+    // The highest order number added - the next refresh reads orders above it
+    public int getLastOrderNumber(){
+        return lastOrderNumber;
+    }
+
+    public long getLines(){
+        return lines;
+    }
+
+    // Ranks and copies the current totals - O(n log n) in products and customers, so only call it after a change
+    public SalesReport toReport(Instant rebuiltAt, Instant updatedAt){
+        List<ProductSales> byRevenue = new ArrayList<>(products.size());
+        for(ProductTotals p : products.values()){
+            byRevenue.add(new ProductSales(p.code, p.name, p.line, p.orders, p.quantity, toAmount(p.revenueCents)));
+        }
+        List<ProductSales> byQuantity = new ArrayList<>(byRevenue);
+        byRevenue.sort(Comparator.comparingDouble(ProductSales::getRevenue).reversed()
+                .thenComparing(ProductSales::getProductCode));
+        byQuantity.sort(Comparator.comparingLong(ProductSales::getQuantity).reversed()
+                .thenComparing(ProductSales::getProductCode));
+
+        List<ProductLineSales> lineSales = new ArrayList<>(productLines.size());
+        productLines.forEach((name, t) ->
+                lineSales.add(new ProductLineSales(name, t.orders, t.quantity, toAmount(t.revenueCents))));
+        lineSales.sort(Comparator.comparingDouble(ProductLineSales::getRevenue).reversed()
+                .thenComparing(ProductLineSales::getProductLine));
+
+        NavigableMap<YearMonth, MonthlySales> monthSales = new TreeMap<>();
+        months.forEach((month, t) ->
+                monthSales.put(month, new MonthlySales(month, t.orders, t.quantity, toAmount(t.revenueCents))));
+
+        Map<Integer, CustomerValue> customerValues = new HashMap<>();
+        for(CustomerTotals c : customers.values()){
+            customerValues.put(c.number, new CustomerValue(c.number, c.name, c.orders, toAmount(c.revenueCents),
+                    c.firstOrderDate, c.lastOrderDate));
+        }
+        List<CustomerValue> customersByRevenue = new ArrayList<>(customerValues.values());
+        customersByRevenue.sort(Comparator.comparingDouble(CustomerValue::getRevenue).reversed()
+                .thenComparingInt(CustomerValue::getCustomerNumber));
+
+        SalesSummary summary = new SalesSummary(all.orders, lines, all.quantity, toAmount(all.revenueCents),
+                customers.size(), products.size(), lastOrderNumber, rebuiltAt, updatedAt);
+        return new SalesReport(summary, Collections.unmodifiableList(byRevenue),
+                Collections.unmodifiableList(byQuantity), Collections.unmodifiableList(lineSales),
+                Collections.unmodifiableNavigableMap(monthSales), Collections.unmodifiableList(customersByRevenue),
+                Collections.unmodifiableMap(customerValues));
+    }
+
+    private static double toAmount(long cents){
+        return cents / 100.0;
+    }
+
+    private static class Totals {
+        int orders;
+        long quantity;
+        long revenueCents;
+        // The last order counted - an order's lines arrive together, so a new number means a new order
+        int lastOrder;
+
+        void add(int orderNumber, int quantity, long cents){
+            if(orderNumber != lastOrder){
+                orders++;
+                lastOrder = orderNumber;
+            }
+            this.quantity += quantity;
+            revenueCents += cents;
+        }
+    }
+
+    private static final class ProductTotals extends Totals {
+        final String code;
+        String name;
+        String line;
+
+        ProductTotals(String code){
+            this.code = code;
+        }
+    }
+
+    private static final class CustomerTotals extends Totals {
+        final int number;
+        String name;
+        LocalDate firstOrderDate;
+        LocalDate lastOrderDate;
+
+        CustomerTotals(int number){
+            this.number = number;
+        }
+
+        void addOrderDate(LocalDate date){
+            if(firstOrderDate == null || date.isBefore(firstOrderDate)){
+                firstOrderDate = date;
+            }
+            if(lastOrderDate == null || date.isAfter(lastOrderDate)){
+                lastOrderDate = date;
+            }
+        }
+    }
+}
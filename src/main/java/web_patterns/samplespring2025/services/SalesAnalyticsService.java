@@ -0,0 +1,204 @@
+package web_patterns.samplespring2025.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import web_patterns.samplespring2025.entities.CustomerValue;
+import web_patterns.samplespring2025.entities.MonthlySales;
+import web_patterns.samplespring2025.entities.ProductLineSales;
+import web_patterns.samplespring2025.entities.ProductSales;
+import web_patterns.samplespring2025.entities.SaleLine;
+import web_patterns.samplespring2025.entities.SalesReport;
+import web_patterns.samplespring2025.entities.SalesSummary;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
+import web_patterns.samplespring2025.persistence.SalesDao;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the sales analytics (/api/analytics/*) from in-memory totals instead of running GROUP BY queries over
+ * orderdetails for every dashboard refresh.
+ * <p>
+ * The totals are built with one streaming scan of every order line once the application is ready. After that, every
+ * analytics.refreshSeconds only the lines of orders numbered above the last one seen are read and added. Each change
+ * publishes a new SalesReport with every view already ranked, so a request is a slice of a list that is already built.
+ * <p>
+ * Incremental refreshes only see new orders. Changes to orders already counted (edited lines, deletes) are picked up
+ * by the full rescan every analytics.rebuildMinutes. An order is expected to be inserted with all of its lines in
+ * one transaction - lines added to an order after a refresh has passed it are also only counted by the next rescan.
+ */
+@Slf4j
+@Service
+public class SalesAnalyticsService {
+    public enum Ranking { REVENUE, QUANTITY }
+
+    // Largest limit accepted by the top products and customers views
+    public static final int MAX_LIMIT = 100;
+
+    private final SalesDao salesDao;
+    private final boolean enabled;
+    private final long refreshSeconds;
+    private final Duration rebuildInterval;
+    private final ScheduledExecutorService refresher;
+
+    // Only changed inside refresh()
+    private SalesAggregates aggregates;
+    private Instant rebuiltAt;
+    private volatile SalesReport report;
+
+    public SalesAnalyticsService(SalesDao salesDao,
+                                 @Value("${analytics.enabled:true}") boolean enabled,
+                                 @Value("${analytics.refreshSeconds:30}") long refreshSeconds,
+                                 @Value("${analytics.rebuildMinutes:60}") long rebuildMinutes){
+        this.salesDao = salesDao;
+        this.enabled = enabled;
+        this.refreshSeconds = Math.max(1, refreshSeconds);
+        this.rebuildInterval = rebuildMinutes > 0 ? Duration.ofMinutes(rebuildMinutes) : null;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sales-analytics");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        if(enabled){
+            refresher.scheduleWithFixedDelay(this::scheduledRefresh, 0, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void scheduledRefresh(){
+        try {
+            refresh();
+        }catch(SQLException | DatabaseUnavailableException e){
+            log.error("Sales analytics could not be refreshed. Database error occurred: {}", e.getMessage());
+        }catch(RuntimeException e){
+            // Anything thrown out of here would stop the schedule
+            log.error("Sales analytics could not be refreshed", e);
+        }
+    }
+
+    /**
+     * Brings the totals up to date - a full scan the first time and every rebuild interval, otherwise only the
+     * orders placed since the last refresh. If the scan fails the current figures are kept.
+     */
+    public synchronized void refresh() throws SQLException {
+        Instant now = Instant.now();
+        if(aggregates == null || (rebuildInterval != null && !now.isBefore(rebuiltAt.plus(rebuildInterval)))){
+            long start = System.nanoTime();
+            SalesAggregates rebuilt = new SalesAggregates();
+            salesDao.forEachSaleLine(0, rebuilt::add);
+            aggregates = rebuilt;
+            rebuiltAt = now;
+            report = rebuilt.toReport(rebuiltAt, now);
+            log.info("Sales analytics built from {} order lines (up to order {}) in {}ms", rebuilt.getLines(),
+                    rebuilt.getLastOrderNumber(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return;
+        }
+
+        // Collect first, so a scan that fails part way through doesn't leave half an order in the totals
+        List<SaleLine> added = new ArrayList<>();
+        salesDao.forEachSaleLine(aggregates.getLastOrderNumber(), added::add);
+        if(added.isEmpty()){
+            return;
+        }
+        for(SaleLine line : added){
+            aggregates.add(line);
+        }
+        report = aggregates.toReport(rebuiltAt, now);
+        log.info("Sales analytics updated with {} new order lines (up to order {})", added.size(),
+                aggregates.getLastOrderNumber());
+    }
+
+    public SalesSummary getSummary(){
+        return current().getSummary();
+    }
+
+    // ETag for the current figures - changes whenever they do
+    public String getETag(){
+        return current().etag();
+    }
+
+    public List<ProductSales> getTopProducts(Ranking by, int limit){
+        checkLimit(limit);
+        SalesReport current = current();
+        List<ProductSales> ranked = by == Ranking.QUANTITY
+                ? current.getProductsByQuantity()
+                : current.getProductsByRevenue();
+        return ranked.subList(0, Math.min(limit, ranked.size()));
+    }
+
+    public List<ProductLineSales> getProductLineSales(){
+        return current().getProductLinesByRevenue();
+    }
+
+    /**
+     * @param from The first month to include, or null to start from the earliest order
+     * @param to The last month to include, or null to run to the latest order
+     * @return Sales per month, oldest first. Months without orders are left out.
+     */
+    public List<MonthlySales> getMonthlySales(YearMonth from, YearMonth to){
+        if(from != null && to != null && from.isAfter(to)){
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        NavigableMap<YearMonth, MonthlySales> months = current().getMonths();
+        if(from != null){
+            months = months.tailMap(from, true);
+        }
+        if(to != null){
+            months = months.headMap(to, true);
+        }
+        return new ArrayList<>(months.values());
+    }
+
+    // Customers ranked by lifetime value (total revenue of their orders)
+    public List<CustomerValue> getTopCustomers(int limit){
+        checkLimit(limit);
+        List<CustomerValue> ranked = current().getCustomersByRevenue();
+        return ranked.subList(0, Math.min(limit, ranked.size()));
+    }
+
+    // Null if the customer has no orders
+    public CustomerValue getCustomerValue(int customerNumber){
+        return current().getCustomers().get(customerNumber);
+    }
+
+    private static void checkLimit(int limit){
+        if(limit < 1 || limit > MAX_LIMIT){
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+    }
+
+    // Seconds until the next refresh attempt - used for Retry-After while the figures are still being built
+    public long getRefreshSeconds(){
+        return refreshSeconds;
+    }
+
+    private SalesReport current(){
+        SalesReport current = report;
+        if(current == null){
+            throw new AnalyticsNotReadyException(enabled
+                    ? "Sales analytics have not been built yet"
+                    : "Sales analytics are turned off");
+        }
+        return current;
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,253 @@
+package web_patterns.samplespring2025.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Stateless login tokens: the token itself carries the username and expiry, signed with HMAC-SHA256.
+ * <p>
+ * Checking a token is a Base64 decode, one HMAC and a clock comparison - no map or database lookup - so any instance
+ * holding the signing keys accepts tokens issued by any other, and tokens survive restarts. A token is
+ * base64url(payload) + "." + base64url(signature), where the payload is a version byte, the signing key's id, the
+ * expiry (epoch seconds), a random token id and the UTF-8 username.
+ * <p>
+ * Key rotation: every configured key is accepted, new tokens are signed with the active key. To rotate, add the new
+ * key to every instance, then make it the active key, then remove the old key once its tokens have expired (after
+ * ttlSeconds). Removing a key immediately invalidates every token signed with it.
+ * <p>
+ * Expiry is always absolute. Revoked tokens (logout) are remembered by token id until they would have expired
+ * anyway; the list is held in memory on the instance that handled the logout and is capped at maxRevoked entries.
+ * When it is full of tokens that haven't expired yet, further logouts are refused with a RevocationListFullException
+ * - forgetting an earlier revocation to make room would make that logged-out token valid again.
+ */
+@Slf4j
+public class SignedTokenService implements AuthTokenService {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    // version, key id, expiry, token id
+    private static final int HEADER_BYTES = 1 + 1 + Long.BYTES + Long.BYTES;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // Indexed by key id
+    private final SigningKey[] keys = new SigningKey[256];
+    private final SigningKey activeKey;
+    private final long ttlSeconds;
+    private final int maxRevoked;
+    private final LongSupplier clockSeconds;
+    private final SecureRandom random = new SecureRandom();
+    // Token id -> expiry (epoch seconds)
+    private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param signingKeys Secrets by key id (0-255) - each at least 32 bytes
+     * @param activeKeyId The key new tokens are signed with
+     * @param ttlSeconds How long a token stays valid
+     * @param maxRevoked The most revoked tokens remembered at once
+     */
+    public SignedTokenService(Map<Integer, byte[]> signingKeys, int activeKeyId, long ttlSeconds, int maxRevoked){
+        this(signingKeys, activeKeyId, ttlSeconds, maxRevoked, () -> System.currentTimeMillis() / 1000);
+    }
+
+    SignedTokenService(Map<Integer, byte[]> signingKeys, int activeKeyId, long ttlSeconds, int maxRevoked,
+                       LongSupplier clockSeconds){
+        if(ttlSeconds < 1 || maxRevoked < 1){
+            throw new IllegalArgumentException("TTL and max revoked tokens must both be at least 1");
+        }
+        for(Map.Entry<Integer, byte[]> key : signingKeys.entrySet()){
+            int id = key.getKey();
+            if(id < 0 || id >= keys.length){
+                throw new IllegalArgumentException("Signing key ids must be between 0 and 255, got " + id);
+            }
+            if(key.getValue().length < 32){
+                throw new IllegalArgumentException("Signing key " + id + " is shorter than 32 bytes");
+            }
+            keys[id] = new SigningKey(id, key.getValue());
+        }
+        if(activeKeyId < 0 || activeKeyId >= keys.length || keys[activeKeyId] == null){
+            throw new IllegalArgumentException("Active signing key " + activeKeyId + " is not one of the signing keys");
+        }
+        this.activeKey = keys[activeKeyId];
+        this.ttlSeconds = ttlSeconds;
+        this.maxRevoked = maxRevoked;
+        this.clockSeconds = clockSeconds;
+        log.info("Signed tokens enabled with {} signing keys, active key {}", signingKeys.size(), activeKeyId);
+    }
+
+    @Override
+    public String issue(String username){
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = ByteBuffer.allocate(HEADER_BYTES + name.length)
+                .put(VERSION)
+                .put((byte) activeKey.id)
+                .putLong(clockSeconds.getAsLong() + ttlSeconds)
+                .putLong(random.nextLong())
+                .put(name)
+                .array();
+        issued.increment();
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(activeKey.sign(payload));
+    }
+
+    @Override
+    public String validate(String token){
+        Claims claims = verify(token);
+        if(claims == null){
+            return null;
+        }
+        // Usually empty - skip the lookup altogether
+        if(!revoked.isEmpty() && revoked.containsKey(claims.tokenId)){
+            rejected.increment();
+            return null;
+        }
+        return claims.username;
+    }
+
+    /**
+     * Revokes the token (logout). Made-up, tampered and expired tokens are ignored.
+     * @throws RevocationListFullException where maxRevoked unexpired tokens are already revoked - the token stays valid
+     */
+    @Override
+    public void revoke(String token){
+        // Only genuine, unexpired tokens are recorded, so the list can't be filled with made-up tokens
+        Claims claims = verify(token);
+        if(claims == null || revoked.containsKey(claims.tokenId)){
+            return;
+        }
+        if(revoked.size() >= maxRevoked){
+            makeRoomForRevocation();
+        }
+        revoked.put(claims.tokenId, claims.expiresAt);
+    }
+
+    // Drop revocations for tokens that have expired by now - if none have, refuse the new one
+    private void makeRoomForRevocation(){
+        long now = clockSeconds.getAsLong();
+        revoked.values().removeIf(expiresAt -> now >= expiresAt);
+        if(revoked.size() < maxRevoked){
+            return;
+        }
+        long soonest = revoked.isEmpty() ? now + 1 : Collections.min(revoked.values());
+        log.warn("revoke() - Revocation list is full ({} unexpired tokens), logout refused", maxRevoked);
+        throw new RevocationListFullException("Revocation list is full, logout could not be recorded",
+                Math.max(1, soonest - now));
+    }
+
+    // The token's contents if its signature is valid and it hasn't expired, otherwise null
+    private Claims verify(String token){
+        if(token == null){
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if(dot < 1 || dot == token.length() - 1){
+            rejected.increment();
+            return null;
+        }
+
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        }catch(IllegalArgumentException e){
+            rejected.increment();
+            return null;
+        }
+        if(payload.length <= HEADER_BYTES || payload[0] != VERSION){
+            rejected.increment();
+            return null;
+        }
+        // Unknown or retired key
+        SigningKey key = keys[payload[1] & 0xFF];
+        if(key == null || !MessageDigest.isEqual(key.sign(payload), signature)){
+            rejected.increment();
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(payload, 2, Long.BYTES * 2);
+        long expiresAt = header.getLong();
+        long tokenId = header.getLong();
+        if(clockSeconds.getAsLong() >= expiresAt){
+            expired.increment();
+            return null;
+        }
+        String username = new String(payload, HEADER_BYTES, payload.length - HEADER_BYTES, StandardCharsets.UTF_8);
+        return new Claims(username, expiresAt, tokenId);
+    }
+
+    // Tokens issued since startup
+    public long getIssued(){
+        return issued.sum();
+    }
+
+    // Tokens refused for a bad format, unknown key, wrong signature or revocation
+    public long getRejected(){
+        return rejected.sum();
+    }
+
+    public long getExpired(){
+        return expired.sum();
+    }
+
+    public int getRevokedCount(){
+        return revoked.size();
+    }
+
+    private record Claims(String username, long expiresAt, long tokenId) {
+    }
+
+    private static final class SigningKey {
+        private final int id;
+        // An initialized Mac, never used directly - copied for virtual threads
+        private final Mac prototype;
+        // Platform threads (e.g. Tomcat's pool) keep their own Mac, so keying it is paid once per thread
+        private final ThreadLocal<Mac> perThread;
+
+        SigningKey(int id, byte[] secret){
+            this.id = id;
+            this.prototype = newMac(new SecretKeySpec(secret, ALGORITHM));
+            this.perThread = ThreadLocal.withInitial(this::copy);
+        }
+
+        byte[] sign(byte[] payload){
+            // A virtual thread usually handles a single request, so a thread-local Mac would be built and thrown
+            // away each time - cloning the keyed prototype is cheaper than keying a new one
+            Mac mac = Thread.currentThread().isVirtual() ? copy() : perThread.get();
+            return mac.doFinal(payload);
+        }
+
+        private Mac copy(){
+            try {
+                return (Mac) prototype.clone();
+            }catch(CloneNotSupportedException e){
+                throw new IllegalStateException(ALGORITHM + " implementation cannot be copied", e);
+            }
+        }
+
+        private static Mac newMac(SecretKeySpec key){
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            }catch(GeneralSecurityException e){
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        }
+    }
+}
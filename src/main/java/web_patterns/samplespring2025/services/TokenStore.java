@@ -0,0 +1,12 @@
+package web_patterns.samplespring2025.services;
+
+import web_patterns.samplespring2025.entities.TokenStoreStats;
+
+// Stores login tokens issued by AuthController against the username they were issued to
+public interface TokenStore {
+    public void put(String token, String username);
+    // Returns the username for the token, or null if the token is unknown or has expired
+    public String get(String token);
+    public void remove(String token);
+    public TokenStoreStats getStats();
+}
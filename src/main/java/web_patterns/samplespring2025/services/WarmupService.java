@@ -0,0 +1,312 @@
+package web_patterns.samplespring2025.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductBatch;
+import web_patterns.samplespring2025.entities.ProductFilter;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.persistence.Connector;
+import web_patterns.samplespring2025.persistence.DatabaseUnavailableException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the code paths a request would hit before the application reports itself ready, so the first real requests
+ * after a deploy don't pay for class loading, JIT compilation, Jackson serializer construction, opening connections
+ * and filling the caches.
+ * <p>
+ * When warmup.enabled=true, warm-up starts on a background thread once the application is ready and runs these steps
+ * in order, each one skipped once warmup.budgetMs has passed:
+ * <ul>
+ *     <li>connections - borrows warmup.connections connections at the same time so the pool opens them</li>
+ *     <li>products - loads the full product list (filling the list and summary caches) and looks up the first
+ *     warmup.sampleSize products by code (filling the product cache)</li>
+ *     <li>search - runs each of warmup.keywords in every match mode (building the search index if needed) and an
+ *     unfiltered faceted filter</li>
+ *     <li>login - hashes and verifies a password on the BCrypt pool, issues, validates and revokes a login token,
+ *     and looks up an unknown user</li>
+ *     <li>serialization - writes each response type with the application's ObjectMapper</li>
+ *     <li>snapshot - waits for the /getAllProducts snapshot to be built (skipped if no products were loaded)</li>
+ *     <li>repeat - runs the page, batch and keyword paths warmup.iterations times so the JIT compiles them</li>
+ * </ul>
+ * A failing step (e.g. the database is down) is logged and the next one runs. The "warmup" health indicator, which is
+ * part of the readiness group (/actuator/health/readiness), reports OUT_OF_SERVICE until warm-up has finished or the
+ * budget has run out - so readiness never waits longer than the budget, even if a step is stuck.
+ */
+@Slf4j
+@Service
+public class WarmupService {
+    public enum Status { DISABLED, PENDING, RUNNING, COMPLETE, TIMED_OUT }
+
+    // A user that doesn't exist - looked up to warm the login query without touching a real account
+    private static final String WARMUP_USERNAME = "warmup-not-a-user";
+    private static final String WARMUP_PASSWORD = "warmup-Passw0rd!";
+
+    private final ProductService productService;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final AuthService authService;
+    private final PasswordHashingExecutor hashingExecutor;
+    private final AuthTokenService tokenService;
+    private final Connector connector;
+    private final ObjectMapper objectMapper;
+
+    private final long budgetMs;
+    private final int connections;
+    private final int sampleSize;
+    private final List<String> keywords;
+    private final int iterations;
+
+    private final ExecutorService runner;
+    private volatile Status status;
+    private volatile long startedAt;
+    private volatile long durationMs;
+    // Step name to how long it took in ms, or the reason it didn't complete
+    private final Map<String, Object> steps = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public WarmupService(ProductService productService, CatalogSnapshotService catalogSnapshotService,
+                         AuthService authService, PasswordHashingExecutor hashingExecutor,
+                         AuthTokenService tokenService, Connector connector, ObjectMapper objectMapper,
+                         @Value("${warmup.enabled:false}") boolean enabled,
+                         @Value("${warmup.budgetMs:30000}") long budgetMs,
+                         @Value("${warmup.connections:4}") int connections,
+                         @Value("${warmup.sampleSize:20}") int sampleSize,
+                         @Value("${warmup.keywords:ford,1965,harley}") List<String> keywords,
+                         @Value("${warmup.iterations:50}") int iterations){
+        this.productService = productService;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.authService = authService;
+        this.hashingExecutor = hashingExecutor;
+        this.tokenService = tokenService;
+        this.connector = connector;
+        this.objectMapper = objectMapper;
+        this.budgetMs = Math.max(1, budgetMs);
+        this.connections = Math.max(0, connections);
+        this.sampleSize = Math.max(0, sampleSize);
+        this.keywords = keywords.stream().map(String::trim).filter(k -> !k.isEmpty()).toList();
+        this.iterations = Math.max(0, iterations);
+        this.status = enabled ? Status.PENDING : Status.DISABLED;
+        this.runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "warmup");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        if(status != Status.PENDING){
+            return;
+        }
+        status = Status.RUNNING;
+        startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        log.info("Warm-up started with a budget of {}ms", budgetMs);
+
+        CompletableFuture.runAsync(() -> runSteps(deadline), runner)
+                .orTimeout(budgetMs, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, e) -> finish(e));
+    }
+
+    private void finish(Throwable e){
+        durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        if(e instanceof TimeoutException){
+            status = Status.TIMED_OUT;
+            log.warn("Warm-up stopped after its {}ms budget - reporting ready anyway. Steps: {}", budgetMs, steps);
+        }else{
+            status = Status.COMPLETE;
+            if(e != null){
+                log.error("Warm-up failed: {}", e.getMessage());
+            }
+            log.info("Warm-up finished in {}ms. Steps: {}", durationMs, steps);
+        }
+    }
+
+    private void runSteps(long deadline){
+        step("connections", deadline, this::openConnections);
+        List<Product> products = new ArrayList<>();
+        step("products", deadline, () -> products.addAll(loadProducts()));
+        step("search", deadline, this::search);
+        step("login", deadline, this::login);
+        step("serialization", deadline, () -> serialize(products));
+        if(!products.isEmpty()){
+            // Without products the database is down and the snapshot can't be built - don't wait out the budget
+            step("snapshot", deadline, () -> awaitSnapshot(deadline));
+        }
+        step("repeat", deadline, () -> repeat(products, deadline));
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private void step(String name, long deadline, Step step){
+        if(System.nanoTime() >= deadline || Thread.currentThread().isInterrupted()){
+            steps.put(name, "skipped - out of time");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            step.run();
+            steps.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }catch(Exception e){
+            // Keep going - a later step may still be useful (e.g. serialization when the database is down)
+            log.warn("Warm-up step {} failed: {}", name, e.getMessage());
+            steps.put(name, "failed - " + e.getMessage());
+        }
+    }
+
+    // Hold several connections at once (each borrow is per thread) so the pool has them open before traffic arrives
+    private void openConnections() throws InterruptedException {
+        CountDownLatch borrowed = new CountDownLatch(connections);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(connections);
+        for(int i = 0; i < connections; i++){
+            threads.add(Thread.ofPlatform().name("warmup-connection-" + i).daemon().start(() -> {
+                Connection conn = null;
+                try {
+                    conn = connector.getConnection();
+                }catch(DatabaseUnavailableException e){
+                    // Circuit breaker open - nothing to hold
+                }
+                borrowed.countDown();
+                if(conn == null){
+                    return;
+                }
+                try {
+                    release.await();
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }finally {
+                    connector.freeConnection();
+                }
+            }));
+        }
+        try {
+            borrowed.await();
+        }finally {
+            release.countDown();
+            for(Thread t : threads){
+                t.join();
+            }
+        }
+    }
+
+    private List<Product> loadProducts() throws SQLException {
+        List<Product> products = productService.getAllProducts();
+        productService.getAllProductSummaries();
+        for(Product p : products.subList(0, Math.min(sampleSize, products.size()))){
+            productService.getProductByCode(p.getProductCode());
+        }
+        return products;
+    }
+
+    private void search() throws SQLException {
+        for(String keyword : keywords){
+            for(ProductSearchIndex.MatchMode mode : ProductSearchIndex.MatchMode.values()){
+                productService.getProductSummariesByKeyword(keyword, mode);
+            }
+        }
+        productService.filterProducts(ProductFilter.builder().build(), 0, ProductService.MAX_PAGE_SIZE);
+    }
+
+    // The database lookup goes last, so BCrypt and the token service are warmed even if the database is down
+    private void login() throws SQLException {
+        String hash = hashingExecutor.hashPassword(WARMUP_PASSWORD);
+        hashingExecutor.verifyPassword(WARMUP_PASSWORD, hash);
+
+        String token = tokenService.issue(WARMUP_USERNAME);
+        tokenService.validate(token);
+        tokenService.revoke(token);
+
+        authService.login(WARMUP_USERNAME, WARMUP_PASSWORD);
+    }
+
+    private void serialize(List<Product> products) throws SQLException, JsonProcessingException {
+        List<Product> sample = products.subList(0, Math.min(sampleSize, products.size()));
+        objectMapper.writeValueAsBytes(sample);
+        for(Product p : sample){
+            objectMapper.writeValueAsBytes(p);
+        }
+        List<ProductSummary> summaries = sample.stream().map(ProductSummary::from).toList();
+        objectMapper.writeValueAsBytes(summaries);
+        objectMapper.writeValueAsBytes(new ProductBatch(sample, List.of("missing")));
+        objectMapper.writeValueAsBytes(productService.getProductsPage(null, ProductService.MAX_PAGE_SIZE));
+        objectMapper.writeValueAsBytes(productService.getProductSummariesPage(null, ProductService.MAX_PAGE_SIZE));
+        objectMapper.writeValueAsBytes(productService.getCacheStats());
+    }
+
+    // The snapshot is built on its own thread - wait for it rather than let the first /getAllProducts fall back
+    private void awaitSnapshot(long deadline) throws InterruptedException {
+        while(catalogSnapshotService.isEnabled() && catalogSnapshotService.getCurrent() == null){
+            if(System.nanoTime() >= deadline){
+                throw new IllegalStateException("snapshot not built within the budget");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    // Run the hot paths enough times for the JIT to compile them
+    private void repeat(List<Product> products, long deadline) throws SQLException, JsonProcessingException {
+        if(products.isEmpty()){
+            return;
+        }
+        List<String> codes = products.stream().map(Product::getProductCode).toList();
+        for(int i = 0; i < iterations && System.nanoTime() < deadline; i++){
+            objectMapper.writeValueAsBytes(productService.getProductsPage(null, ProductService.MAX_PAGE_SIZE));
+            objectMapper.writeValueAsBytes(productService.getProductsByCodes(
+                    codes.subList(0, Math.min(sampleSize, codes.size()))));
+            if(!keywords.isEmpty()){
+                objectMapper.writeValueAsBytes(productService.getProductsByKeyword(keywords.get(i % keywords.size())));
+            }
+        }
+    }
+
+    public Status getStatus(){
+        return status;
+    }
+
+    // True once warm-up is no longer holding back readiness (finished, out of time, or turned off)
+    public boolean isDone(){
+        Status current = status;
+        return current == Status.DISABLED || current == Status.COMPLETE || current == Status.TIMED_OUT;
+    }
+
+    // How long warm-up ran, in ms - 0 until it has finished
+    public long getDurationMs(){
+        return durationMs;
+    }
+
+    public long getBudgetMs(){
+        return budgetMs;
+    }
+
+    public Map<String, Object> getSteps(){
+        synchronized(steps){
+            return new LinkedHashMap<>(steps);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        runner.shutdownNow();
+    }
+}
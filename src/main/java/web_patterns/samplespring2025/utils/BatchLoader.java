@@ -0,0 +1,181 @@
+package web_patterns.samplespring2025.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gathers single-key lookups that arrive close together into one batched load (the DataLoader pattern).
+ * <p>
+ * When no batch is being loaded, a lookup is loaded straight away on its own - a lone lookup never waits. While a
+ * batch is loading, the next caller to arrive opens a new batch and any keys requested before that load finishes are
+ * added to it; it is then loaded with one call to the batch function - run by the caller that opened it, so no extra
+ * threads are involved - and every caller gets its own key's value. A batch is loaded early if it reaches
+ * maxBatchSize, and at the latest once it has waited the batch window, even if the earlier load is still running.
+ * <p>
+ * Keys missing from the batch function's result load as null. If the batch function throws, every caller in the
+ * batch gets that exception.
+ * @param <K> The key type (must not be null)
+ * @param <V> The loaded value type
+ * @param <E> The exception the batch function may throw
+ */
+public class BatchLoader<K, V, E extends Exception> {
+    private final BatchFunction<K, V, E> batchFunction;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    // Guards the batch that is currently open for new keys and the count of batches being loaded
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch<K, V> open;
+    private int loading = 0;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keysLoaded = new LongAdder();
+
+    /**
+     * @param batchFunction Loads many keys at once, returning the values found (keys not found may be left out)
+     * @param windowMillis The longest a batch waits for an earlier one to finish loading before it is loaded anyway
+     * @param maxBatchSize The most keys in one batch
+     */
+    public BatchLoader(BatchFunction<K, V, E> batchFunction, long windowMillis, int maxBatchSize){
+        if(windowMillis < 0 || maxBatchSize < 1){
+            throw new IllegalArgumentException("Batch window cannot be negative and batch size must be at least 1");
+        }
+        this.batchFunction = batchFunction;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Loads one key as part of a batch.
+     * @return The key's value, or null if the batch function didn't return one
+     * @throws E The exception thrown by the batch function for the batch this key was in
+     */
+    public V load(K key) throws E {
+        Batch<K, V> batch;
+        CompletableFuture<V> result;
+        boolean leader = false;
+        boolean loadNow = false;
+        lock.lock();
+        try {
+            if(open == null){
+                open = new Batch<>();
+                leader = true;
+            }
+            batch = open;
+            result = batch.keys.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if(leader && loading == 0){
+                // Nothing is loading, so there is nothing to wait for - load this key on its own straight away
+                open = null;
+                loading++;
+                loadNow = true;
+            }else if(batch.keys.size() >= maxBatchSize){
+                // Full - close it to new keys and wake the leader
+                open = null;
+                batch.ready.countDown();
+            }
+        }finally {
+            lock.unlock();
+        }
+
+        if(leader){
+            if(!loadNow){
+                awaitBatch(batch);
+            }
+            run(batch);
+        }
+        return await(result);
+    }
+
+    // Wait until the batch fills, the load before it finishes or the window runs out, then close the batch so later
+    // keys start a new one
+    private void awaitBatch(Batch<K, V> batch){
+        try {
+            batch.ready.await(windowNanos, TimeUnit.NANOSECONDS);
+        }catch(InterruptedException e){
+            // Run the batch now rather than leave the other callers waiting
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if(open == batch){
+                open = null;
+            }
+            loading++;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Batch<K, V> batch){
+        batches.increment();
+        keysLoaded.add(batch.keys.size());
+        try {
+            Map<K, V> values = batchFunction.load(Collections.unmodifiableSet(batch.keys.keySet()));
+            for(Map.Entry<K, CompletableFuture<V>> entry : batch.keys.entrySet()){
+                entry.getValue().complete(values.get(entry.getKey()));
+            }
+        }catch(Throwable t){
+            for(CompletableFuture<V> future : batch.keys.values()){
+                future.completeExceptionally(t);
+            }
+        }finally {
+            lock.lock();
+            try {
+                loading--;
+                // The batch gathered while this one loaded can go now
+                if(open != null){
+                    open.ready.countDown();
+                }
+            }finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V await(CompletableFuture<V> future) throws E {
+        try {
+            return future.join();
+        }catch(CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException re){
+                throw re;
+            }
+            if(cause instanceof Error error){
+                throw error;
+            }
+            // Only the batch function's declared exception type can get here
+            throw (E) cause;
+        }
+    }
+
+    // Batched loads run
+    public long getBatches(){
+        return batches.sum();
+    }
+
+    // Keys loaded across all batches - divided by getBatches() this gives the average batch size
+    public long getKeysLoaded(){
+        return keysLoaded.sum();
+    }
+
+    @FunctionalInterface
+    public interface BatchFunction<K, V, E extends Exception> {
+        Map<K, V> load(Set<K> keys) throws E;
+    }
+
+    private static class Batch<K, V> {
+        // Only changed under the loader's lock, and only read by the leader once the batch is closed
+        private final Map<K, CompletableFuture<V>> keys = new LinkedHashMap<>();
+        // Released when the batch fills or the load before it finishes
+        private final CountDownLatch ready = new CountDownLatch(1);
+    }
+}
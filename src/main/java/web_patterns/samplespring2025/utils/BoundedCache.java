@@ -0,0 +1,230 @@
+package web_patterns.samplespring2025.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded, thread-safe in-memory cache with an optional time-to-live.
+ * <p>
+ * When the cache is full, the least recently used (LRU) or least frequently used (LFU) entry is evicted,
+ * depending on the policy it was created with. Both policies evict in constant time.
+ * Expired entries are removed lazily, when they are next looked up.
+ * @param <K> The key type
+ * @param <V> The value type - null values are not stored
+ */
+public class BoundedCache<K, V> {
+    public enum EvictionPolicy { LRU, LFU }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final EvictionPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Node<K, V>> entries = new HashMap<>();
+    // LRU: a single recency list (head = least recently used)
+    // LFU: one recency list per use count, so ties are broken by recency
+    private final Map<Integer, LinkedHashSet<Node<K, V>>> frequencies = new HashMap<>();
+    private final LinkedHashSet<Node<K, V>> recency = new LinkedHashSet<>();
+    private int minFrequency = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize The most entries the cache will hold (must be at least 1)
+     * @param ttlMillis How long an entry stays valid after it is stored, 0 or less for no expiry
+     * @param policy Which entry to evict when the cache is full
+     */
+    public BoundedCache(int maxSize, long ttlMillis, EvictionPolicy policy){
+        if(maxSize < 1){
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if(policy == null){
+            throw new IllegalArgumentException("Eviction policy cannot be null");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000 : 0;
+        this.policy = policy;
+    }
+
+    public V get(K key){
+        lock.lock();
+        try {
+            Node<K, V> node = entries.get(key);
+            if(node == null){
+                misses.increment();
+                return null;
+            }
+            if(ttlNanos > 0 && System.nanoTime() - node.storedAt > ttlNanos){
+                unlink(node);
+                entries.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            touch(node);
+            hits.increment();
+            return node.value;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value){
+        if(key == null || value == null){
+            return;
+        }
+        lock.lock();
+        try {
+            Node<K, V> node = entries.get(key);
+            if(node != null){
+                node.value = value;
+                node.storedAt = System.nanoTime();
+                touch(node);
+                return;
+            }
+            if(entries.size() >= maxSize){
+                evict();
+            }
+            node = new Node<>(key, value, System.nanoTime());
+            entries.put(key, node);
+            link(node);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key){
+        lock.lock();
+        try {
+            Node<K, V> node = entries.remove(key);
+            if(node != null){
+                unlink(node);
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll(){
+        lock.lock();
+        try {
+            entries.clear();
+            recency.clear();
+            frequencies.clear();
+            minFrequency = 0;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(){
+        lock.lock();
+        try {
+            return entries.size();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    public EvictionPolicy getPolicy(){
+        return policy;
+    }
+
+    public long getHits(){
+        return hits.sum();
+    }
+
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    public long getExpirations(){
+        return expirations.sum();
+    }
+
+    // Record a use of the node, moving it to the back of its (possibly new) list
+    private void touch(Node<K, V> node){
+        unlink(node);
+        node.frequency++;
+        link(node);
+    }
+
+    private void link(Node<K, V> node){
+        if(policy == EvictionPolicy.LRU){
+            recency.add(node);
+            return;
+        }
+        frequencies.computeIfAbsent(node.frequency, f -> new LinkedHashSet<>()).add(node);
+        if(node.frequency < minFrequency || entries.size() == 1){
+            minFrequency = node.frequency;
+        }
+    }
+
+    private void unlink(Node<K, V> node){
+        if(policy == EvictionPolicy.LRU){
+            recency.remove(node);
+            return;
+        }
+        LinkedHashSet<Node<K, V>> bucket = frequencies.get(node.frequency);
+        if(bucket != null){
+            bucket.remove(node);
+            if(bucket.isEmpty()){
+                frequencies.remove(node.frequency);
+                if(minFrequency == node.frequency){
+                    // A touched node moves to frequency + 1, which then becomes the lowest
+                    minFrequency = node.frequency + 1;
+                }
+            }
+        }
+    }
+
+    private void evict(){
+        LinkedHashSet<Node<K, V>> candidates = policy == EvictionPolicy.LRU ? recency : lowestFrequencyBucket();
+        if(candidates == null || candidates.isEmpty()){
+            return;
+        }
+        Iterator<Node<K, V>> it = candidates.iterator();
+        Node<K, V> victim = it.next();
+        unlink(victim);
+        entries.remove(victim.key);
+        evictions.increment();
+    }
+
+    private LinkedHashSet<Node<K, V>> lowestFrequencyBucket(){
+        LinkedHashSet<Node<K, V>> bucket = frequencies.get(minFrequency);
+        if(bucket == null && !frequencies.isEmpty()){
+            // minFrequency can go stale after an invalidate - find the real minimum (rare)
+            minFrequency = frequencies.keySet().stream().mapToInt(Integer::intValue).min().getAsInt();
+            bucket = frequencies.get(minFrequency);
+        }
+        return bucket;
+    }
+
+    private static class Node<K, V> {
+        private final K key;
+        private V value;
+        private long storedAt;
+        private int frequency = 1;
+
+        private Node(K key, V value, long storedAt){
+            this.key = key;
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
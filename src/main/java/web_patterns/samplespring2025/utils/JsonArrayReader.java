@@ -0,0 +1,83 @@
+package web_patterns.samplespring2025.utils;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the elements of a JSON array one at a time, so large uploads never have to be held in memory all at once.
+ * <p>
+ * Like NdjsonReader, an element that can't be turned into a T (e.g. a required field is missing) does not stop the
+ * reader: next() throws an IllegalArgumentException for that element, and the following call carries on with the
+ * next one. A body that isn't valid JSON, or isn't an array, can't be read past - hasNext()/next() throw an
+ * UncheckedIOException.
+ * @param <T> The type each element is read into
+ */
+public class JsonArrayReader<T> implements Iterator<T> {
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private boolean started = false;
+    private boolean finished = false;
+    // True when the parser is on the first token of an element that next() hasn't read yet
+    private boolean pending = false;
+    private int index = 0;
+
+    public JsonArrayReader(JsonParser parser, ObjectReader reader){
+        this.parser = parser;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext(){
+        try {
+            if(!started){
+                started = true;
+                if(parser.nextToken() != JsonToken.START_ARRAY){
+                    throw new JsonParseException(parser, "Expected a JSON array");
+                }
+            }
+            if(!pending && !finished){
+                JsonToken token = parser.nextToken();
+                if(token == null){
+                    throw new JsonParseException(parser, "Unexpected end of the JSON array");
+                }
+                finished = token == JsonToken.END_ARRAY;
+                pending = !finished;
+            }
+            return pending;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next(){
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        int element = index++;
+        JsonNode node;
+        try {
+            // Read the element as a tree first, so a bad element leaves the parser at the start of the next one
+            node = reader.readTree(parser);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        try {
+            return reader.readValue(node);
+        }catch(JsonProcessingException e){
+            throw new IllegalArgumentException("Element " + element + " could not be read: " + e.getOriginalMessage());
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
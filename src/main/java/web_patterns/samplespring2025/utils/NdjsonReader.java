@@ -0,0 +1,63 @@
+package web_patterns.samplespring2025.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads newline-delimited JSON (one JSON object per line) one value at a time, so large uploads never have to be
+ * held in memory all at once. Blank lines are skipped.
+ * <p>
+ * A line that can't be parsed does not stop the reader: next() throws an IllegalArgumentException for that line,
+ * and the following call carries on with the next line.
+ * @param <T> The type each line is read into
+ */
+public class NdjsonReader<T> implements Iterator<T> {
+    private final BufferedReader in;
+    private final ObjectReader reader;
+    private String nextLine;
+    private int lineNumber = 0;
+
+    public NdjsonReader(BufferedReader in, ObjectReader reader){
+        this.in = in;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext(){
+        try {
+            while(nextLine == null){
+                String line = in.readLine();
+                if(line == null){
+                    return false;
+                }
+                lineNumber++;
+                if(!line.isBlank()){
+                    nextLine = line;
+                }
+            }
+            return true;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next(){
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        String line = nextLine;
+        nextLine = null;
+        try {
+            return reader.readValue(line);
+        }catch(JsonProcessingException e){
+            throw new IllegalArgumentException("Line " + lineNumber + " could not be parsed: " + e.getOriginalMessage());
+        }
+    }
+}
@@ -24,11 +24,23 @@ public class PasswordHasher {
      * @throws IllegalArgumentException where supplied string is null or empty.
      */
     public static String hashPassword(String plaintext) {
+        return hashPassword(plaintext, WORKLOAD);
+    }
+
+    /**
+     * Hashes a supplied plaintext password using BCrypt with a specific workload (cost factor).
+     * Each increase of 1 doubles the time taken to hash and verify the password.
+     * @param plaintext The account's password in plaintext form.
+     * @param workload The BCrypt workload to use, 4-31 (the rest of the application uses 12).
+     * @return A string of length 60 containing the bcrypt hashed password in crypt(3) format - $id$salt$hash.
+     * @throws IllegalArgumentException where supplied string is null or empty, or the workload is out of range.
+     */
+    public static String hashPassword(String plaintext, int workload) {
         if(plaintext == null || plaintext.isEmpty()){
             throw new IllegalArgumentException("Cannot hash a null or empty string");
         }
 
-        String salt = BCrypt.gensalt(WORKLOAD);
+        String salt = BCrypt.gensalt(workload);
         return BCrypt.hashpw(plaintext, salt);
     }
 
@@ -66,8 +78,8 @@ public class PasswordHasher {
     private static boolean testWithDatabase(String enteredUsername, String enteredPassword) throws SQLException {
         Connector connector = new MySqlConnector("properties/database.properties");
         UserDao userDao = new UserDaoImpl(connector);
-        boolean loggedIn = userDao.login(enteredUsername, enteredPassword);
-        return loggedIn;
+        String hashedPassword = userDao.getPasswordHash(enteredUsername);
+        return hashedPassword != null && verifyPassword(enteredPassword, hashedPassword);
     }
 
     private static boolean testWithHardCodedValues(String enteredUsername, String enteredPassword){
@@ -0,0 +1,97 @@
+package web_patterns.samplespring2025.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent calls for the same key into one.
+ * <p>
+ * The first caller for a key (the leader) runs the load. Any caller that asks for the same key while that load is
+ * still running waits for it and gets the same result - or the same exception - instead of running its own. Once
+ * the load finishes the key is forgotten, so the next caller starts a fresh load: nothing is cached here.
+ * <p>
+ * Waiting is done on a CompletableFuture, so waiting virtual threads unmount rather than pin their carrier.
+ * @param <K> The key type (must not be null)
+ * @param <V> The loaded value type
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * Runs the loader for the key, or waits for the load already running for it.
+     * @param key The key being loaded
+     * @param loader The load to run if no other caller is already loading this key
+     * @return The value loaded by whichever caller ran the load
+     * @throws E The exception thrown by the load (the same instance is rethrown to every caller sharing it)
+     */
+    public <E extends Exception> V execute(K key, Loader<V, E> loader) throws E {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if(existing != null){
+            collapsed.increment();
+            return await(existing);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.load();
+            // Forget the key before publishing, so anyone arriving afterwards starts a fresh load
+            inFlight.remove(key, mine);
+            mine.complete(value);
+            return value;
+        }catch(Throwable t){
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    /**
+     * Stops later callers joining the load running for the key (if any) - they start a fresh load instead. Callers
+     * already waiting still get its result. Used when the data being loaded has just changed, so a load that started
+     * earlier may return the old value.
+     */
+    public void forget(K key){
+        inFlight.remove(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> V await(CompletableFuture<V> future) throws E {
+        try {
+            return future.join();
+        }catch(CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException re){
+                throw re;
+            }
+            if(cause instanceof Error error){
+                throw error;
+            }
+            // Only the loader's declared exception type can get here
+            throw (E) cause;
+        }
+    }
+
+    // Loads that actually ran
+    public long getLoads(){
+        return loads.sum();
+    }
+
+    // Calls that were served by another caller's load instead of running their own
+    public long getCollapsed(){
+        return collapsed.sum();
+    }
+
+    public int getInFlight(){
+        return inFlight.size();
+    }
+
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+}
@@ -0,0 +1,49 @@
+package web_patterns.samplespring2025.perf;
+
+import org.openjdk.jmh.annotations.*;
+import web_patterns.samplespring2025.services.ExpiringTokenStore;
+import web_patterns.samplespring2025.services.OpaqueTokenService;
+import web_patterns.samplespring2025.services.SignedTokenService;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cost of checking a login token per request: HMAC-signed tokens versus opaque tokens looked up in the token store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthTokenBenchmark {
+    private SignedTokenService signed;
+    private OpaqueTokenService opaque;
+    private String signedToken;
+    private String opaqueToken;
+
+    @Setup
+    public void setup(){
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        signed = new SignedTokenService(Map.of(1, key), 1, 1800, 10_000);
+        opaque = new OpaqueTokenService(new ExpiringTokenStore(1800, true, 100_000, 16));
+        signedToken = signed.issue("athena");
+        opaqueToken = opaque.issue("athena");
+    }
+
+    @Benchmark
+    public String validateSigned(){
+        return signed.validate(signedToken);
+    }
+
+    @Benchmark
+    public String validateOpaque(){
+        return opaque.validate(opaqueToken);
+    }
+
+    @Benchmark
+    public String issueSigned(){
+        return signed.issue("athena");
+    }
+}
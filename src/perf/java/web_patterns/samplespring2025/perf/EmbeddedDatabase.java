@@ -0,0 +1,143 @@
+package web_patterns.samplespring2025.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * An in-memory H2 database (MySQL compatibility mode) loaded with the classicmodels schema and dataset from
+ * src/main/resources/sql, so performance tests can run without a MySQL server.
+ * <p>
+ * The MySQL scripts are translated as they are loaded: database-level statements (CREATE/DROP DATABASE, USE) are
+ * skipped and MySQL backslash escapes in string literals are converted to standard SQL.
+ */
+public class EmbeddedDatabase {
+    private static final String[] SCRIPTS = {"sql/classicmodels.sql", "sql/classicmodels_dataset.sql"};
+
+    private final String name;
+
+    private EmbeddedDatabase(String name){
+        this.name = name;
+    }
+
+    /**
+     * Creates and seeds a named in-memory database. It stays alive until the JVM exits.
+     * @param name The database name - use a different name for each independent database
+     */
+    public static EmbeddedDatabase create(String name) throws SQLException, IOException {
+        EmbeddedDatabase db = new EmbeddedDatabase(name);
+        try(Connection conn = DriverManager.getConnection(db.jdbcUrl(), "sa", "");
+            Statement st = conn.createStatement()) {
+            for(String script : SCRIPTS){
+                for(String sql : statements(readScript(script))){
+                    st.execute(sql);
+                }
+            }
+        }
+        return db;
+    }
+
+    public String jdbcUrl(){
+        return "jdbc:h2:mem:" + databaseSettings();
+    }
+
+    /**
+     * Connector properties (in the same format as properties/database.properties) pointing at this database.
+     */
+    public Properties connectorProperties(){
+        Properties properties = new Properties();
+        properties.setProperty("driver", "org.h2.Driver");
+        properties.setProperty("url", "jdbc:h2:mem:");
+        properties.setProperty("database", databaseSettings());
+        properties.setProperty("username", "sa");
+        properties.setProperty("password", "");
+        properties.setProperty("pool.minSize", "2");
+        properties.setProperty("pool.maxSize", "16");
+        return properties;
+    }
+
+    private String databaseSettings(){
+        return name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    private static String readScript(String resource) throws IOException {
+        try(InputStream in = EmbeddedDatabase.class.getClassLoader().getResourceAsStream(resource)) {
+            if(in == null){
+                throw new IOException("SQL script \"" + resource + "\" not found on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Split a MySQL script into statements, dropping comments and database-level statements and rewriting
+    // backslash escapes inside string literals
+    static List<String> statements(String script){
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inString = false;
+        int i = 0;
+        while(i < script.length()){
+            char c = script.charAt(i);
+            if(inString){
+                if(c == '\\' && i + 1 < script.length()){
+                    char escaped = script.charAt(i + 1);
+                    switch (escaped) {
+                        case 'n' -> current.append('\n');
+                        case 'r' -> current.append('\r');
+                        case 't' -> current.append('\t');
+                        case '0' -> current.append('\0');
+                        case '\'' -> current.append("''");
+                        default -> current.append(escaped);
+                    }
+                    i += 2;
+                    continue;
+                }
+                if(c == '\''){
+                    inString = false;
+                }
+                current.append(c);
+                i++;
+                continue;
+            }
+
+            if(c == '\''){
+                inString = true;
+                current.append(c);
+                i++;
+            }else if(c == '/' && i + 1 < script.length() && script.charAt(i + 1) == '*'){
+                int end = script.indexOf("*/", i + 2);
+                i = end == -1 ? script.length() : end + 2;
+            }else if(c == '-' && script.startsWith("-- ", i)){
+                int end = script.indexOf('\n', i);
+                i = end == -1 ? script.length() : end;
+            }else if(c == ';'){
+                addStatement(statements, current.toString());
+                current.setLength(0);
+                i++;
+            }else{
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, current.toString());
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, String sql){
+        String trimmed = sql.trim();
+        String upper = trimmed.toUpperCase(Locale.ROOT);
+        if(trimmed.isEmpty() || upper.startsWith("USE ")
+                || upper.startsWith("CREATE DATABASE") || upper.startsWith("DROP DATABASE")){
+            return;
+        }
+        statements.add(trimmed);
+    }
+}
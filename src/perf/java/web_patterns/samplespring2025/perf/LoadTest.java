@@ -0,0 +1,386 @@
+package web_patterns.samplespring2025.perf;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import web_patterns.samplespring2025.SampleSpring2025Application;
+import web_patterns.samplespring2025.utils.PasswordHasher;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the running application against an embedded database (see EmbeddedDatabase).
+ * <p>
+ * Requests are started on a fixed schedule - rate per second, spread evenly - whether or not earlier requests have
+ * finished, each on its own virtual thread, so a slow response never delays the requests scheduled after it. Response
+ * time is measured from when a request was scheduled to start rather than from when it was actually sent, which
+ * corrects for coordinated omission: if the load generator itself falls behind (a GC pause, a busy CPU), the time
+ * requests spent waiting to be sent is counted instead of silently disappearing. Service time (from the actual send)
+ * is reported alongside for comparison.
+ * <p>
+ * Heap allocated during the measured period is reported too, per request. It is counted for the whole JVM - the load
+ * generator's share is the same for the same mix and rate, so differences between runs are the application's.
+ * <p>
+ * The application runs in the same JVM as the load generator, so results are only comparable between runs on the
+ * same machine with the same arguments. Run through the loadtest Maven profile - see pom.xml for the arguments.
+ */
+public class LoadTest {
+    private static final String DATABASE_PROPERTIES = "properties/database_loadtest.properties";
+    private static final String USERNAME = "loadtest";
+    private static final String PASSWORD = "L0adTest!";
+    private static final List<String> KEYWORDS = List.of("steering", "chrome", "Ford", "1969", "Harley", "engine",
+            "red", "Ferrari", "wheels", "diecast");
+
+    enum Operation {
+        // GET /api/products/{code} for a random seeded product
+        GET,
+        // GET /api/products/getAllProducts
+        LIST,
+        // GET /api/products/page from a random cursor
+        PAGE,
+        // GET /api/products/getByKeyword with a random keyword
+        SEARCH,
+        // POST /api/products/add with a new product code
+        ADD,
+        // POST /api/auth/login with the load test user (BCrypt verify)
+        LOGIN
+    }
+
+    private final Settings settings;
+    private final URI base;
+    private final List<String> productCodes;
+    private final HttpClient client;
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final AtomicLong addedProducts = new AtomicLong();
+    // How late the dispatcher started requests compared to the schedule - large values mean the generator is overloaded
+    private final LongAccumulator maxDispatchLagNanos = new LongAccumulator(Math::max, 0);
+    private final com.sun.management.ThreadMXBean threads =
+            ManagementFactory.getPlatformMXBean(com.sun.management.ThreadMXBean.class);
+    // Bytes allocated by every thread so far, read when the measured period starts and once its requests are done
+    private long allocatedAtStart = -1;
+    private long allocatedAtEnd;
+
+    private LoadTest(Settings settings, URI base, List<String> productCodes){
+        this.settings = settings;
+        this.base = base;
+        this.productCodes = productCodes;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for(Operation operation : settings.mix.keySet()){
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        EmbeddedDatabase db = EmbeddedDatabase.create("loadtest");
+        List<String> productCodes = seedLoadTestData(db);
+
+        ConfigurableApplicationContext app = SpringApplication.run(SampleSpring2025Application.class,
+                "--server.port=0",
+                "--connector.properties.path=" + DATABASE_PROPERTIES,
+                "--logging.level.root=WARN");
+        try {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port", "8080"));
+            LoadTest loadTest = new LoadTest(settings, URI.create("http://localhost:" + port), productCodes);
+            loadTest.run();
+            loadTest.report();
+        }finally {
+            app.close();
+        }
+    }
+
+    // Adds the login user (the seeded users' passwords aren't known) and returns the seeded product codes
+    private static List<String> seedLoadTestData(EmbeddedDatabase db) throws Exception {
+        try(Connection conn = DriverManager.getConnection(db.jdbcUrl(), "sa", "")) {
+            try(PreparedStatement ps = conn.prepareStatement("INSERT INTO users(username, password) VALUES (?, ?)")) {
+                ps.setString(1, USERNAME);
+                ps.setString(2, PasswordHasher.hashPassword(PASSWORD));
+                ps.executeUpdate();
+            }
+            List<String> codes = new ArrayList<>();
+            try(Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT productCode FROM products ORDER BY productCode")) {
+                while(rs.next()){
+                    codes.add(rs.getString(1));
+                }
+            }
+            return codes;
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("Load test: %d requests/s for %ds after %ds warmup, mix %s%n",
+                settings.rate, settings.durationSeconds, settings.warmupSeconds, settings.mixDescription());
+        int[] weights = settings.mix.values().stream().mapToInt(Integer::intValue).toArray();
+        Operation[] operations = settings.mix.keySet().toArray(new Operation[0]);
+        int totalWeight = 0;
+        for(int weight : weights){
+            totalWeight += weight;
+        }
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) settings.rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(settings.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(long i = 0; ; i++){
+                long intended = start + (long) (i * intervalNanos);
+                if(intended - end >= 0){
+                    break;
+                }
+                waitUntil(intended);
+                maxDispatchLagNanos.accumulate(System.nanoTime() - intended);
+
+                Operation operation = pick(operations, weights, totalWeight);
+                HttpRequest request = request(operation);
+                boolean measured = intended - measureFrom >= 0;
+                if(measured && allocatedAtStart < 0){
+                    allocatedAtStart = threads.getTotalThreadAllocatedBytes();
+                }
+                executor.execute(() -> send(operation, request, intended, measured));
+            }
+            // Closing the executor waits for the requests still in flight
+        }
+        allocatedAtEnd = threads.getTotalThreadAllocatedBytes();
+    }
+
+    private static void waitUntil(long deadline){
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0){
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private Operation pick(Operation[] operations, int[] weights, int totalWeight){
+        int roll = random.nextInt(totalWeight);
+        for(int i = 0; i < operations.length; i++){
+            roll -= weights[i];
+            if(roll < 0){
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private HttpRequest request(Operation operation){
+        HttpRequest.Builder builder = switch (operation) {
+            case GET -> get("/api/products/" + randomCode());
+            case LIST -> get("/api/products/getAllProducts");
+            case PAGE -> get("/api/products/page?limit=20&cursor=" + cursorAfter(randomCode()));
+            case SEARCH -> get("/api/products/getByKeyword?keyword="
+                    + URLEncoder.encode(KEYWORDS.get(random.nextInt(KEYWORDS.size())), StandardCharsets.UTF_8));
+            case ADD -> HttpRequest.newBuilder(base.resolve("/api/products/add"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(newProductJson()));
+            case LOGIN -> HttpRequest.newBuilder(base.resolve("/api/auth/login?username=" + USERNAME
+                            + "&password=" + URLEncoder.encode(PASSWORD, StandardCharsets.UTF_8)))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+        };
+        return builder.timeout(Duration.ofMillis(settings.timeoutMs)).build();
+    }
+
+    private HttpRequest.Builder get(String path){
+        return HttpRequest.newBuilder(base.resolve(path)).GET();
+    }
+
+    private String randomCode(){
+        return productCodes.get(random.nextInt(productCodes.size()));
+    }
+
+    // Page cursors are the URL-safe Base64 of the last product code on the previous page (see ProductService)
+    private static String cursorAfter(String productCode){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(productCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String newProductJson(){
+        String code = "LT" + addedProducts.incrementAndGet();
+        return """
+                {"productCode":"%s","productName":"Load test model %s","productLine":"Classic Cars",\
+                "productScale":"1:18","productVendor":"Load Test Diecast","productDescription":"Added by the load test",\
+                "quantityInStock":100,"buyPrice":25.5,"msrp":49.99}""".formatted(code, code);
+    }
+
+    private void send(Operation operation, HttpRequest request, long intended, boolean measured){
+        long sent = System.nanoTime();
+        String error = null;
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if(response.statusCode() >= 400){
+                error = String.valueOf(response.statusCode());
+            }
+        }catch(Exception e){
+            // Timeouts and connection failures - the time spent still counts
+            error = e.getClass().getSimpleName();
+        }
+        long done = System.nanoTime();
+        if(measured){
+            stats.get(operation).record(done - intended, done - sent, error);
+        }
+    }
+
+    private void report(){
+        Stats all = new Stats();
+        for(Stats operationStats : stats.values()){
+            all.add(operationStats);
+        }
+        System.out.println();
+        System.out.println("Response time (ms, from scheduled start - corrected for coordinated omission)");
+        printHeader();
+        stats.forEach((operation, operationStats) ->
+                printRow(operation.name().toLowerCase(Locale.ROOT), operationStats, operationStats.responseTime));
+        printRow("all", all, all.responseTime);
+
+        System.out.println();
+        System.out.println("Service time (ms, from actual send - not corrected)");
+        printHeader();
+        stats.forEach((operation, operationStats) ->
+                printRow(operation.name().toLowerCase(Locale.ROOT), operationStats, operationStats.serviceTime));
+        printRow("all", all, all.serviceTime);
+
+        System.out.println();
+        stats.forEach((operation, operationStats) -> {
+            if(!operationStats.errorsByCause.isEmpty()){
+                System.out.printf("Errors for %s: %s%n", operation.name().toLowerCase(Locale.ROOT),
+                        operationStats.errorsByCause);
+            }
+        });
+        System.out.printf("Max dispatch lag %.3f ms, products added %d%n",
+                maxDispatchLagNanos.get() / 1e6, addedProducts.get());
+        long allocated = allocatedAtEnd - allocatedAtStart;
+        long requests = all.responseTime.getTotalCount();
+        System.out.printf("Allocated %.1f MB while measuring (%.1f KB per request, whole JVM)%n",
+                allocated / 1e6, requests == 0 ? 0 : allocated / 1e3 / requests);
+    }
+
+    private static void printHeader(){
+        System.out.printf("%-8s %9s %7s %10s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max");
+    }
+
+    private void printRow(String name, Stats operationStats, Histogram histogram){
+        long count = histogram.getTotalCount();
+        System.out.printf("%-8s %9d %7d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                name, count, operationStats.errors.sum(), count / (double) settings.durationSeconds,
+                millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    // Histograms are recorded in microseconds
+    private static double millis(Histogram histogram, double percentile){
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static class Stats {
+        private final Histogram responseTime = new ConcurrentHistogram(3);
+        private final Histogram serviceTime = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+        // HTTP status or exception name -> count
+        private final Map<String, LongAdder> errorsByCause = new ConcurrentSkipListMap<>();
+
+        // error is null for a successful request
+        void record(long responseNanos, long serviceNanos, String error){
+            responseTime.recordValue(TimeUnit.NANOSECONDS.toMicros(responseNanos));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(serviceNanos));
+            if(error != null){
+                errors.increment();
+                errorsByCause.computeIfAbsent(error, e -> new LongAdder()).increment();
+            }
+        }
+
+        void add(Stats other){
+            responseTime.add(other.responseTime);
+            serviceTime.add(other.serviceTime);
+            errors.add(other.errors.sum());
+        }
+    }
+
+    // name=value arguments - see the loadtest profile in pom.xml
+    private record Settings(int rate, int durationSeconds, int warmupSeconds, long timeoutMs,
+                            Map<Operation, Integer> mix) {
+        private static final String DEFAULT_MIX = "get:50,list:5,page:10,search:20,add:5,login:10";
+
+        static Settings parse(String[] args){
+            Map<String, String> values = new LinkedHashMap<>();
+            for(String arg : args){
+                int equals = arg.indexOf('=');
+                if(equals < 1){
+                    throw new IllegalArgumentException("Arguments must be name=value, got \"" + arg + "\"");
+                }
+                values.put(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+            Settings settings = new Settings(
+                    Integer.parseInt(values.getOrDefault("rate", "200")),
+                    Integer.parseInt(values.getOrDefault("duration", "30")),
+                    Integer.parseInt(values.getOrDefault("warmup", "10")),
+                    Long.parseLong(values.getOrDefault("timeoutMs", "10000")),
+                    parseMix(values.getOrDefault("mix", DEFAULT_MIX)));
+            if(settings.rate < 1 || settings.durationSeconds < 1 || settings.warmupSeconds < 0){
+                throw new IllegalArgumentException("rate and duration must be at least 1 and warmup at least 0");
+            }
+            return settings;
+        }
+
+        private static Map<Operation, Integer> parseMix(String mix){
+            Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+            for(String entry : mix.split(",")){
+                String[] parts = entry.trim().split(":");
+                if(parts.length != 2){
+                    throw new IllegalArgumentException("Mix entries must be operation:weight, got \"" + entry + "\"");
+                }
+                int weight = Integer.parseInt(parts[1].trim());
+                if(weight > 0){
+                    weights.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), weight);
+                }
+            }
+            if(weights.isEmpty()){
+                throw new IllegalArgumentException("The mix must give at least one operation a positive weight");
+            }
+            return weights;
+        }
+
+        String mixDescription(){
+            StringBuilder description = new StringBuilder();
+            mix.forEach((operation, weight) -> {
+                if(!description.isEmpty()){
+                    description.append(',');
+                }
+                description.append(operation.name().toLowerCase(Locale.ROOT)).append(':').append(weight);
+            });
+            return description.toString();
+        }
+    }
+}
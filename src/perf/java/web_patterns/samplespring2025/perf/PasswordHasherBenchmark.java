@@ -0,0 +1,35 @@
+package web_patterns.samplespring2025.perf;
+
+import org.openjdk.jmh.annotations.*;
+import web_patterns.samplespring2025.utils.PasswordHasher;
+
+import java.util.concurrent.TimeUnit;
+
+// BCrypt cost at different work factors - each step up doubles the time. The application uses 12.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordHasherBenchmark {
+    @Param({"4", "8", "10", "12"})
+    public int workFactor;
+
+    private String hash;
+
+    @Setup
+    public void setup(){
+        hash = PasswordHasher.hashPassword("Passw0rd!", workFactor);
+    }
+
+    @Benchmark
+    public String hashPassword(){
+        return PasswordHasher.hashPassword("Passw0rd!", workFactor);
+    }
+
+    @Benchmark
+    public boolean verifyPassword(){
+        return PasswordHasher.verifyPassword("Passw0rd!", hash);
+    }
+}
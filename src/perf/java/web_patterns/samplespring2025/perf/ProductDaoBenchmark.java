@@ -0,0 +1,88 @@
+package web_patterns.samplespring2025.perf;
+
+import org.openjdk.jmh.annotations.*;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.persistence.PooledConnector;
+import web_patterns.samplespring2025.persistence.ProductDao;
+import web_patterns.samplespring2025.persistence.ProductDaoImpl;
+import web_patterns.samplespring2025.services.ProductSearchIndex;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ProductDao read paths through the pooled connector against the embedded database,
+// plus the in-memory search index for comparison with the LIKE keyword query
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductDaoBenchmark {
+    private static final List<String> CART_CODES = List.of("S10_1678", "S10_1949", "S10_2016", "S10_4698",
+            "S10_4757", "S10_4962", "S12_1099", "S12_1108", "S12_1666", "S12_2823");
+
+    @Param({"steering"})
+    public String keyword;
+
+    private PooledConnector connector;
+    private ProductDao productDao;
+    private ProductSearchIndex searchIndex;
+
+    @Setup
+    public void setup() throws Exception {
+        EmbeddedDatabase db = EmbeddedDatabase.create("productdao");
+        connector = new PooledConnector(db.connectorProperties());
+        productDao = new ProductDaoImpl(connector);
+        searchIndex = new ProductSearchIndex(false);
+        searchIndex.rebuild(productDao.getAllProducts());
+    }
+
+    @TearDown
+    public void tearDown(){
+        connector.close();
+    }
+
+    @Benchmark
+    public List<Product> getAllProducts() throws Exception {
+        return productDao.getAllProducts();
+    }
+
+    @Benchmark
+    public List<ProductSummary> getAllProductSummaries() throws Exception {
+        return productDao.getAllProductSummaries();
+    }
+
+    @Benchmark
+    public Product getProductByCode() throws Exception {
+        return productDao.getProductByCode("S18_3232");
+    }
+
+    // Ten codes in one IN (...) query, compared with ten getProductByCode() calls
+    @Benchmark
+    public List<Product> getProductsByCodes() throws Exception {
+        return productDao.getProductsByCodes(CART_CODES);
+    }
+
+    @Benchmark
+    public int getProductByCodeTenTimes() throws Exception {
+        int found = 0;
+        for(String code : CART_CODES){
+            if(productDao.getProductByCode(code) != null){
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<Product> getAllProductsContainingKeyword() throws Exception {
+        return productDao.getAllProductsContainingKeyword(keyword);
+    }
+
+    @Benchmark
+    public List<Product> searchIndexKeyword(){
+        return searchIndex.search(keyword, ProductSearchIndex.MatchMode.SUBSTRING);
+    }
+}
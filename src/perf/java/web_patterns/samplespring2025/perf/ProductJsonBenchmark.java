@@ -0,0 +1,62 @@
+package web_patterns.samplespring2025.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductSummary;
+import web_patterns.samplespring2025.persistence.PooledConnector;
+import web_patterns.samplespring2025.persistence.ProductDaoImpl;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// JSON serialization of the full product list, as done by ProductController for /getAllProducts and /summaries
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductJsonBenchmark {
+    private ObjectMapper objectMapper;
+    private List<Product> products;
+    private List<ProductSummary> summaries;
+    private Product product;
+
+    @Setup
+    public void setup() throws Exception {
+        EmbeddedDatabase db = EmbeddedDatabase.create("productjson");
+        PooledConnector connector = new PooledConnector(db.connectorProperties());
+        products = new ProductDaoImpl(connector).getAllProducts();
+        product = products.get(0);
+        summaries = products.stream().map(ProductSummary::from).toList();
+        connector.close();
+        // Configured the same way as the ObjectMapper Spring Boot gives the controllers
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    // The serialization /getAllProducts does per request when no catalog snapshot is current - see the loadtest
+    // profile for the endpoint with and without the snapshot
+    @Benchmark
+    public void writeProductList() throws Exception {
+        // Jackson closes the stream it is given, so each call needs its own
+        objectMapper.writeValue(OutputStream.nullOutputStream(), products);
+    }
+
+    @Benchmark
+    public byte[] serializeProductList() throws Exception {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] serializeSummaryList() throws Exception {
+        return objectMapper.writeValueAsBytes(summaries);
+    }
+
+    @Benchmark
+    public byte[] serializeProduct() throws Exception {
+        return objectMapper.writeValueAsBytes(product);
+    }
+}
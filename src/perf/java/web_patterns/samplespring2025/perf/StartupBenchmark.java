@@ -0,0 +1,227 @@
+package web_patterns.samplespring2025.perf;
+
+import org.h2.tools.Server;
+import web_patterns.samplespring2025.SampleSpring2025Application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time from launching the application's JVM to its first successful request, for each startup mode of the faststart
+ * build (see the faststart profile in pom.xml).
+ * <p>
+ * Each run starts a new JVM from the extracted jar and polls the request path until it returns 200, so the time
+ * includes JVM startup, Spring context refresh, the web server starting and the first request's own work (with lazy
+ * initialization, creating the beans it needs). Runs are interleaved across modes so that any drift in the machine's
+ * load affects every mode equally.
+ * <p>
+ * The application connects over TCP to an embedded H2 database (MySQL mode) served from this JVM, so the request
+ * really reads from a database. Modes:
+ * <ul>
+ *     <li>default - the plain jar</li>
+ *     <li>lazy - lazy bean initialization (the faststart Spring profile)</li>
+ *     <li>aot - Spring AOT generated bean definitions</li>
+ *     <li>cds - the class data sharing archive from the training run</li>
+ *     <li>all - aot, cds and lazy together</li>
+ * </ul>
+ */
+public class StartupBenchmark {
+    private static final String DATABASE_PROPERTIES = "properties/database_startup.properties";
+    private static final long POLL_INTERVAL_MS = 10;
+
+    private final Path dir;
+    private final Path jar;
+    private final Path configDir;
+    private final String path;
+    private final long timeoutNanos;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private StartupBenchmark(Path dir, Path jar, Path configDir, String path, long timeoutSeconds){
+        this.dir = dir;
+        this.jar = jar;
+        this.configDir = configDir;
+        this.path = path;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> values = new LinkedHashMap<>();
+        for(String arg : args){
+            int equals = arg.indexOf('=');
+            if(equals < 1){
+                throw new IllegalArgumentException("Arguments must be name=value, got \"" + arg + "\"");
+            }
+            values.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        Path dir = Path.of(values.getOrDefault("dir", "target/faststart"));
+        Path jar = dir.resolve(values.getOrDefault("jar", "SampleSpring2025-0.0.1-SNAPSHOT.jar"));
+        int runs = Integer.parseInt(values.getOrDefault("runs", "5"));
+        List<String> modes = Arrays.asList(values.getOrDefault("modes", "default,lazy,aot,cds,all").split(","));
+        String path = values.getOrDefault("path", "/api/products/getAllProducts");
+        long timeoutSeconds = Long.parseLong(values.getOrDefault("timeoutSeconds", "60"));
+        if(!Files.exists(jar)){
+            throw new IllegalArgumentException("Extracted jar " + jar + " not found - build with the faststart profile first");
+        }
+
+        EmbeddedDatabase db = EmbeddedDatabase.create("startup");
+        Server server = Server.createTcpServer("-tcpPort", String.valueOf(freePort())).start();
+        Path configDir = Files.createTempDirectory("startup-benchmark");
+        try {
+            writeDatabaseProperties(db, server.getPort(), configDir);
+            StartupBenchmark benchmark = new StartupBenchmark(dir, jar, configDir, path, timeoutSeconds);
+
+            System.out.printf("Startup benchmark: time to first successful GET %s, %d runs per mode%n", path, runs);
+            Map<String, List<Double>> results = new LinkedHashMap<>();
+            for(String mode : modes){
+                results.put(mode.trim(), new ArrayList<>());
+            }
+            for(int run = 0; run < runs; run++){
+                for(Map.Entry<String, List<Double>> entry : results.entrySet()){
+                    entry.getValue().add(benchmark.timeToFirstRequest(entry.getKey()));
+                }
+            }
+            report(results);
+        }finally {
+            server.stop();
+            deleteRecursively(configDir);
+        }
+    }
+
+    // The same database settings as the embedded database, reached over TCP from the application's JVM
+    private static void writeDatabaseProperties(EmbeddedDatabase db, int port, Path configDir) throws IOException {
+        Properties properties = db.connectorProperties();
+        properties.setProperty("url", "jdbc:h2:tcp://localhost:" + port + "/mem:");
+        Path file = configDir.resolve(DATABASE_PROPERTIES);
+        Files.createDirectories(file.getParent());
+        try(OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "Written by StartupBenchmark");
+        }
+    }
+
+    // Starts the application in the given mode and returns the milliseconds until the first 200 response
+    private double timeToFirstRequest(String mode) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs(mode));
+        // The extracted jar first (its manifest lists the dependency jars), then the database properties and driver
+        command.add("-cp");
+        command.add(String.join(File.pathSeparator, jar.toAbsolutePath().toString(), configDir.toString(),
+                jarOf(org.h2.Driver.class)));
+        command.add(SampleSpring2025Application.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--connector.properties.path=" + DATABASE_PROPERTIES);
+        command.add("--logging.level.root=WARN");
+        if(mode.equals("lazy") || mode.equals("all")){
+            command.add("--spring.profiles.active=faststart");
+        }
+
+        Path output = configDir.resolve("application-" + mode + ".log");
+        // The application's file log (logs/) is written under the temporary directory too
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(configDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile());
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            while(System.nanoTime() - start < timeoutNanos){
+                if(!process.isAlive()){
+                    throw new IllegalStateException("Application (" + mode + ") exited with code " + process.exitValue()
+                            + ":\n" + Files.readString(output));
+                }
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if(response.statusCode() == 200){
+                        return (System.nanoTime() - start) / 1e6;
+                    }
+                }catch(IOException e){
+                    // Not listening yet
+                }
+                Thread.sleep(POLL_INTERVAL_MS);
+            }
+            throw new IllegalStateException("Application (" + mode + ") did not answer " + path + " within the timeout:\n"
+                    + Files.readString(output));
+        }finally {
+            process.destroy();
+            if(!process.waitFor(10, TimeUnit.SECONDS)){
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private List<String> jvmArgs(String mode){
+        String cds = "-XX:SharedArchiveFile=" + dir.resolve("application.jsa").toAbsolutePath();
+        String aot = "-Dspring.aot.enabled=true";
+        return switch (mode) {
+            case "default", "lazy" -> List.of();
+            case "aot" -> List.of(aot);
+            case "cds" -> List.of(cds);
+            case "all" -> List.of(cds, aot);
+            default -> throw new IllegalArgumentException("Unknown mode \"" + mode + "\" - use default, lazy, aot, cds or all");
+        };
+    }
+
+    private static void report(Map<String, List<Double>> results){
+        System.out.println();
+        System.out.printf("%-8s %9s %9s %9s %9s %9s%n", "mode", "min ms", "median", "mean", "max", "vs default");
+        double baseline = results.containsKey("default") ? median(results.get("default")) : Double.NaN;
+        results.forEach((mode, times) -> {
+            double median = median(times);
+            System.out.printf("%-8s %9.0f %9.0f %9.0f %9.0f %9.2fx%n", mode,
+                    times.stream().mapToDouble(Double::doubleValue).min().orElse(0), median,
+                    times.stream().mapToDouble(Double::doubleValue).average().orElse(0),
+                    times.stream().mapToDouble(Double::doubleValue).max().orElse(0), baseline / median);
+        });
+    }
+
+    private static double median(List<Double> times){
+        List<Double> sorted = times.stream().sorted().toList();
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static String jarOf(Class<?> type) throws Exception {
+        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            for(Path p : paths.sorted(Comparator.reverseOrder()).toList()){
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
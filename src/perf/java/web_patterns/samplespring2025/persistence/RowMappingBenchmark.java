@@ -0,0 +1,68 @@
+package web_patterns.samplespring2025.persistence;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.perf.EmbeddedDatabase;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Cost of mapping rows to Products on its own - the products table is copied into an in-memory row set once,
+// so no database work is included in the measurement.
+// byName is the original mapping (column names and the builder), indexed is ProductDaoImpl.PRODUCT_MAPPER.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+    private CachedRowSet rows;
+
+    @Setup
+    public void setup() throws Exception {
+        EmbeddedDatabase db = EmbeddedDatabase.create("rowmapping");
+        try(Connection conn = DriverManager.getConnection(db.jdbcUrl(), "sa", "");
+            Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT * FROM products")) {
+            rows = RowSetProvider.newFactory().createCachedRowSet();
+            rows.populate(rs);
+        }
+    }
+
+    // Each benchmark maps every row of the products table (110 rows)
+    @Benchmark
+    public void byName(Blackhole bh) throws Exception {
+        rows.beforeFirst();
+        while(rows.next()){
+            bh.consume(mapByName(rows));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole bh) throws Exception {
+        rows.beforeFirst();
+        ProductDaoImpl.PRODUCT_MAPPER.forEach("SELECT * FROM products", rows, bh::consume);
+    }
+
+    private static Product mapByName(ResultSet rs) throws SQLException {
+        return Product.builder()
+                .productCode(rs.getString("productCode"))
+                .productName(rs.getString("productName"))
+                .productLine(rs.getString("productLine"))
+                .productScale(rs.getString("productScale"))
+                .productVendor(rs.getString("productVendor"))
+                .productDescription(rs.getString("productDescription"))
+                .quantityInStock(rs.getInt("quantityInStock"))
+                .buyPrice(rs.getDouble("buyPrice"))
+                .msrp(rs.getDouble("MSRP"))
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package web_patterns.samplespring2025.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class CircuitBreakerConnectorTests {
+
+    // Stands in for the database - can be switched off, and takes connectDelayMs to fail like a real connect timeout.
+    // When busy, borrows fail the way an exhausted pool's do, with the database itself still up.
+    private static class FaultyConnector implements Connector {
+        private final Connection connection = mock(Connection.class);
+        private final long connectDelayMs;
+        private volatile boolean down = false;
+        private volatile boolean busy = false;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        FaultyConnector(long connectDelayMs){
+            this.connectDelayMs = connectDelayMs;
+        }
+
+        @Override
+        public Connection getConnection(){
+            attempts.incrementAndGet();
+            if(busy){
+                return null;
+            }
+            if(!down){
+                return connection;
+            }
+            try {
+                Thread.sleep(connectDelayMs);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        @Override
+        public void freeConnection(){
+        }
+
+        @Override
+        public boolean lastBorrowFailedToConnect(){
+            return !busy;
+        }
+    }
+
+    private static void awaitAttempts(FaultyConnector database, int attempts) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while(database.attempts.get() < attempts && System.nanoTime() < deadline){
+            Thread.sleep(5);
+        }
+        assertTrue(database.attempts.get() >= attempts, "Expected " + attempts + " connection attempts");
+    }
+
+    @Test
+    void opensAfterRepeatedFailuresAndRejectsWithoutWaiting() throws Exception {
+        FaultyConnector database = new FaultyConnector(100);
+        database.down = true;
+        try(CircuitBreakerConnector breaker = new CircuitBreakerConnector(database, 3, 60_000)) {
+            ProductDao dao = new ProductDaoImpl(breaker);
+            for(int i = 0; i < 3; i++){
+                assertThrows(SQLException.class, () -> dao.getProductByCode("S10_1678"));
+            }
+            assertEquals(CircuitBreakerConnector.State.OPEN, breaker.getState());
+
+            long start = System.nanoTime();
+            DatabaseUnavailableException e = assertThrows(DatabaseUnavailableException.class,
+                    () -> dao.getProductByCode("S10_1678"));
+            assertTrue(System.nanoTime() - start < 50_000_000L, "Open breaker should not wait on the database");
+            assertEquals(3, database.attempts.get());
+            assertEquals(1, breaker.getRejected());
+            assertTrue(e.getRetryAfterSeconds() >= 1 && e.getRetryAfterSeconds() <= 60);
+        }
+    }
+
+    @Test
+    void backgroundProbeClosesTheBreakerOnceTheDatabaseIsBack() throws Exception {
+        FaultyConnector database = new FaultyConnector(0);
+        database.down = true;
+        try(CircuitBreakerConnector breaker = new CircuitBreakerConnector(database, 1, 20)) {
+            assertNull(breaker.getConnection());
+            assertNotEquals(CircuitBreakerConnector.State.CLOSED, breaker.getState());
+
+            // Probes keep failing while the database is down
+            awaitAttempts(database, 3);
+            assertNotEquals(CircuitBreakerConnector.State.CLOSED, breaker.getState());
+
+            database.down = false;
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while(breaker.getState() != CircuitBreakerConnector.State.CLOSED && System.nanoTime() < deadline){
+                Thread.sleep(5);
+            }
+            assertEquals(CircuitBreakerConnector.State.CLOSED, breaker.getState());
+            assertSame(database.connection, breaker.getConnection());
+            assertEquals(1, breaker.getOpened());
+        }
+    }
+
+    @Test
+    void successResetsTheFailureCount() throws Exception {
+        FaultyConnector database = new FaultyConnector(0);
+        try(CircuitBreakerConnector breaker = new CircuitBreakerConnector(database, 3, 60_000)) {
+            database.down = true;
+            breaker.getConnection();
+            breaker.getConnection();
+            database.down = false;
+            assertNotNull(breaker.getReadConnection());
+            breaker.freeConnection();
+            database.down = true;
+            breaker.getConnection();
+            breaker.getConnection();
+
+            assertEquals(CircuitBreakerConnector.State.CLOSED, breaker.getState());
+        }
+    }
+
+    @Test
+    void busyPoolDoesNotOpenTheBreaker() throws Exception {
+        FaultyConnector database = new FaultyConnector(0);
+        database.busy = true;
+        try(CircuitBreakerConnector breaker = new CircuitBreakerConnector(database, 2, 60_000)) {
+            for(int i = 0; i < 5; i++){
+                assertNull(breaker.getConnection());
+            }
+            assertEquals(CircuitBreakerConnector.State.CLOSED, breaker.getState());
+            assertEquals(0, breaker.getOpened());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package web_patterns.samplespring2025.persistence;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.Product;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProductDaoImplTests {
+
+    private static Product product(String code){
+        return new Product(code, "1969 Harley Davidson", "Motorcycles", "1:10", "Min Lin Diecast", "", 10, 48.81,
+                95.70);
+    }
+
+    // A connector handing out one mocked connection whose batch insert always fails, forcing the row-by-row path
+    private static Connector connectorFor(Connection conn){
+        return new Connector() {
+            @Override
+            public Connection getConnection(){
+                return conn;
+            }
+
+            @Override
+            public void freeConnection(){
+            }
+        };
+    }
+
+    private static PreparedStatement failingBatch(Connection conn) throws SQLException {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenThrow(new BatchUpdateException("Duplicate entry", "23000", 1062, new int[0]));
+        return ps;
+    }
+
+    @Test
+    void constraintViolationsAreReportedPerRow() throws Exception {
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = failingBatch(conn);
+        when(ps.executeUpdate())
+                .thenReturn(1)
+                .thenThrow(new SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062))
+                .thenReturn(1);
+
+        int[] results = new ProductDaoImpl(connectorFor(conn)).addProducts(
+                List.of(product("S10_1"), product("S10_2"), product("S10_3")));
+
+        assertArrayEquals(new int[]{0, 1062, 0}, results);
+        verify(conn).commit();
+    }
+
+    @Test
+    void otherRowErrorsFailTheWholeBatch() throws Exception {
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = failingBatch(conn);
+        // A deadlock rolls back the transaction - the first row's insert is gone too
+        when(ps.executeUpdate())
+                .thenReturn(1)
+                .thenThrow(new SQLException("Deadlock found when trying to get lock", "40001", 1213));
+
+        ProductDaoImpl dao = new ProductDaoImpl(connectorFor(conn));
+        SQLException e = assertThrows(SQLException.class,
+                () -> dao.addProducts(List.of(product("S10_1"), product("S10_2"), product("S10_3"))));
+
+        assertEquals(1213, e.getErrorCode());
+        verify(ps, times(2)).executeUpdate();
+        verify(conn, never()).commit();
+        verify(conn, times(2)).rollback();
+    }
+}
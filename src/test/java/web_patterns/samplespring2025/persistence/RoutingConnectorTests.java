@@ -0,0 +1,141 @@
+package web_patterns.samplespring2025.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RoutingConnectorTests {
+
+    // Hands out its own connection and counts how it was used
+    private static class StubConnector implements Connector {
+        private final Connection connection = mock(Connection.class);
+        private boolean down = false;
+        // Fails borrows like an exhausted pool does - the database itself is still up
+        private boolean busy = false;
+        private int borrows = 0;
+        private int held = 0;
+
+        @Override
+        public Connection getConnection(){
+            if(down || busy){
+                return null;
+            }
+            borrows++;
+            held++;
+            return connection;
+        }
+
+        @Override
+        public void freeConnection(){
+            held--;
+        }
+
+        @Override
+        public boolean lastBorrowFailedToConnect(){
+            return !busy;
+        }
+    }
+
+    private final StubConnector primary = new StubConnector();
+    private final StubConnector replicaA = new StubConnector();
+    private final StubConnector replicaB = new StubConnector();
+
+    @Test
+    void readsAlternateBetweenReplicasAndWritesGoToPrimary() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA, replicaB), 30_000, 0);
+
+        for(int i = 0; i < 4; i++){
+            connector.getReadConnection();
+            connector.freeConnection();
+        }
+        connector.getConnection();
+        connector.freeConnection();
+
+        assertEquals(2, replicaA.borrows);
+        assertEquals(2, replicaB.borrows);
+        assertEquals(1, primary.borrows);
+        assertEquals(0, primary.held + replicaA.held + replicaB.held);
+    }
+
+    @Test
+    void failedReplicaIsEjectedAndPrimaryIsTheLastResort() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA, replicaB), 30_000, 0);
+        replicaA.down = true;
+
+        for(int i = 0; i < 4; i++){
+            assertSame(replicaB.connection, connector.getReadConnection());
+            connector.freeConnection();
+        }
+        assertTrue(connector.isEjected(0));
+
+        replicaB.down = true;
+        assertSame(primary.connection, connector.getReadConnection());
+        connector.freeConnection();
+    }
+
+    @Test
+    void busyReplicaIsNotEjected() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA, replicaB), 30_000, 0);
+        replicaA.busy = true;
+
+        assertSame(replicaB.connection, connector.getReadConnection());
+        connector.freeConnection();
+        assertFalse(connector.isEjected(0));
+
+        // Back in rotation as soon as its pool frees up
+        replicaA.busy = false;
+        for(int i = 0; i < 2; i++){
+            connector.getReadConnection();
+            connector.freeConnection();
+        }
+        assertEquals(1, replicaA.borrows);
+        assertEquals(0, primary.borrows);
+    }
+
+    @Test
+    void readsStayOnPrimaryAfterAWriteAndInsideOne() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA), 30_000, 60_000);
+
+        connector.getConnection();
+        // Read nested inside a write - must see the write's own connection
+        assertSame(primary.connection, connector.getReadConnection());
+        connector.freeConnection();
+        connector.freeConnection();
+
+        // Within the pin window after the write
+        assertSame(primary.connection, connector.getReadConnection());
+        connector.freeConnection();
+        assertEquals(0, replicaA.borrows);
+        assertEquals(0, primary.held);
+    }
+
+    @Test
+    void primaryReadDoesNotPinReadsToPrimary() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA), 30_000, 60_000);
+
+        assertSame(primary.connection, connector.getPrimaryReadConnection());
+        connector.freeConnection();
+        assertSame(replicaA.connection, connector.getReadConnection());
+        connector.freeConnection();
+        assertEquals(0, primary.held + replicaA.held);
+    }
+
+    @Test
+    void reachabilityCheckDoesNotPinReadsToPrimary() {
+        RoutingConnector connector = new RoutingConnector(primary, List.of(replicaA), 30_000, 60_000);
+
+        assertTrue(connector.isReachable());
+        assertEquals(1, primary.borrows);
+        assertSame(replicaA.connection, connector.getReadConnection());
+        connector.freeConnection();
+        assertEquals(0, primary.held + replicaA.held);
+
+        primary.down = true;
+        assertFalse(connector.isReachable());
+        assertTrue(connector.lastBorrowFailedToConnect());
+    }
+}
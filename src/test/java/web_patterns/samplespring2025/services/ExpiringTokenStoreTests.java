@@ -0,0 +1,114 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.TokenStoreStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringTokenStoreTests {
+    // Starts away from zero, as System.nanoTime() may
+    private final AtomicLong now = new AtomicLong(-5_000_000_000L);
+
+    private void advanceSeconds(long seconds){
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    // One stripe, so tokens share one expiry order and capacity
+    private ExpiringTokenStore store(boolean slidingExpiry, int maxEntries){
+        return new ExpiringTokenStore(60, slidingExpiry, maxEntries, 1, now::get);
+    }
+
+    @Test
+    void absoluteExpiryIsCountedFromIssueEvenWhenUsed() {
+        ExpiringTokenStore tokens = store(false, 10);
+        tokens.put("t1", "athena");
+
+        advanceSeconds(59);
+        assertEquals("athena", tokens.get("t1"));
+        advanceSeconds(1);
+        assertNull(tokens.get("t1"));
+        assertEquals(1, tokens.getStats().getExpired());
+    }
+
+    @Test
+    void slidingExpiryRestartsOnEachUse() {
+        ExpiringTokenStore tokens = store(true, 10);
+        tokens.put("t1", "athena");
+
+        advanceSeconds(50);
+        assertEquals("athena", tokens.get("t1"));
+        advanceSeconds(50);
+        assertEquals("athena", tokens.get("t1"));
+        advanceSeconds(60);
+        assertNull(tokens.get("t1"));
+    }
+
+    @Test
+    void putPurgesExpiredTokensFromTheFront() {
+        ExpiringTokenStore tokens = store(false, 10);
+        tokens.put("t1", "athena");
+        tokens.put("t2", "helo");
+        advanceSeconds(30);
+        tokens.put("t3", "lee");
+
+        advanceSeconds(31);
+        tokens.put("t4", "kara");
+
+        TokenStoreStats stats = tokens.getStats();
+        assertEquals(2, stats.getSize());
+        assertEquals(2, stats.getExpired());
+        assertEquals("lee", tokens.get("t3"));
+    }
+
+    @Test
+    void usedTokensMoveBehindUnusedOnesWithSlidingExpiry() {
+        ExpiringTokenStore tokens = store(true, 10);
+        tokens.put("t1", "athena");
+        tokens.put("t2", "helo");
+
+        advanceSeconds(30);
+        tokens.get("t1");
+        advanceSeconds(31);
+        tokens.put("t3", "lee");
+
+        // t2 was at the front and expired - t1 is behind it and still valid
+        assertEquals(1, tokens.getStats().getExpired());
+        assertEquals("athena", tokens.get("t1"));
+        assertNull(tokens.get("t2"));
+    }
+
+    @Test
+    void fullStoreEvictsTheOldestToken() {
+        ExpiringTokenStore tokens = store(false, 2);
+        tokens.put("t1", "athena");
+        tokens.put("t2", "helo");
+        // Re-issuing a held token doesn't need room
+        tokens.put("t2", "helo");
+        assertEquals(0, tokens.getStats().getEvicted());
+
+        tokens.put("t3", "lee");
+
+        assertNull(tokens.get("t1"));
+        assertEquals("helo", tokens.get("t2"));
+        assertEquals("lee", tokens.get("t3"));
+        TokenStoreStats stats = tokens.getStats();
+        assertEquals(1, stats.getEvicted());
+        assertEquals(2, stats.getSize());
+        assertEquals(0, stats.getExpired());
+    }
+
+    @Test
+    void removedTokenIsGone() {
+        ExpiringTokenStore tokens = store(false, 10);
+        tokens.put("t1", "athena");
+
+        tokens.remove("t1");
+        tokens.remove("unknown");
+
+        assertNull(tokens.get("t1"));
+        assertEquals(1, tokens.getStats().getRemoved());
+    }
+}
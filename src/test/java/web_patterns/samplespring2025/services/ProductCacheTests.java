@@ -0,0 +1,46 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.utils.BoundedCache;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheTests {
+
+    private static Product product(String code, int stock){
+        return new Product(code, "1969 Harley Davidson", "Motorcycles", "1:10", "Min Lin Diecast", "", stock, 48.81,
+                95.70);
+    }
+
+    @Test
+    void loadStartedBeforeAnInvalidationIsNotCached() {
+        ProductCache cache = new ProductCache(true, 100, 60_000, BoundedCache.EvictionPolicy.LRU);
+
+        // The load reads the generation, then a write invalidates the product before the load's result is put
+        long generation = cache.getGeneration();
+        cache.invalidate(List.of("S10_1678"));
+        cache.putProduct(product("S10_1678", 7933), generation);
+        cache.putAllProducts(List.of(product("S10_1678", 7933)), generation);
+
+        assertNull(cache.getProduct("S10_1678"));
+        assertNull(cache.getAllProducts());
+
+        cache.putProduct(product("S10_1678", 7932), cache.getGeneration());
+        assertEquals(7932, cache.getProduct("S10_1678").getQuantityInStock());
+    }
+
+    @Test
+    void emptyInvalidationKeepsCachedLists() {
+        ProductCache cache = new ProductCache(true, 100, 60_000, BoundedCache.EvictionPolicy.LRU);
+        long generation = cache.getGeneration();
+        cache.putAllProducts(List.of(product("S10_1678", 7933)), generation);
+
+        cache.invalidate(List.of());
+
+        assertEquals(generation, cache.getGeneration());
+        assertNotNull(cache.getAllProducts());
+    }
+}
@@ -0,0 +1,102 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.FacetedProductPage;
+import web_patterns.samplespring2025.entities.Product;
+import web_patterns.samplespring2025.entities.ProductFilter;
+import web_patterns.samplespring2025.entities.ProductSummary;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductFacetIndexTests {
+
+    private static Product product(String code, String line, String vendor, String scale, int stock, double buyPrice){
+        return new Product(code, "name " + code, line, scale, vendor, "description", stock, buyPrice, buyPrice * 2);
+    }
+
+    private static ProductFacetIndex index(){
+        ProductFacetIndex index = new ProductFacetIndex();
+        index.rebuild(List.of(
+                product("S10_1", "Classic Cars", "Autoart", "1:10", 500, 40.0),
+                product("S10_2", "Classic Cars", "Min Lin", "1:18", 1500, 55.0),
+                product("S12_1", "Motorcycles", "Autoart", "1:12", 2500, 30.0),
+                product("S18_1", "Vintage Cars", "Min Lin", "1:18", 7000, 80.0),
+                product("S18_2", "Classic Cars", "Autoart", "1:18", 0, 50.0)));
+        return index;
+    }
+
+    private static List<String> codes(FacetedProductPage page){
+        return page.getProducts().stream().map(ProductSummary::getProductCode).toList();
+    }
+
+    @Test
+    void combinesFieldsWithAndAndValuesWithOr(){
+        ProductFacetIndex index = index();
+        FacetedProductPage page = index.filter(ProductFilter.builder()
+                .productLines(Set.of("Classic Cars", "Motorcycles"))
+                .productVendors(Set.of("Autoart"))
+                .build(), 0, 10);
+        assertEquals(List.of("S10_1", "S12_1", "S18_2"), codes(page));
+        assertEquals(3, page.getTotal());
+
+        // A value that no product has matches nothing, rather than being ignored
+        assertEquals(0, index.filter(ProductFilter.builder().productLines(Set.of("Ships")).build(), 0, 10)
+                .getTotal());
+
+        // Paging is over the matches in product code order
+        FacetedProductPage second = index.filter(ProductFilter.builder().build(), 2, 2);
+        assertEquals(5, second.getTotal());
+        assertEquals(List.of("S12_1", "S18_1"), codes(second));
+    }
+
+    @Test
+    void facetCountsIgnoreTheirOwnField(){
+        FacetedProductPage page = index().filter(ProductFilter.builder()
+                .productLines(Set.of("Classic Cars"))
+                .productScales(Set.of("1:18"))
+                .build(), 0, 10);
+        assertEquals(List.of("S10_2", "S18_2"), codes(page));
+        Map<String, Map<String, Integer>> facets = page.getFacets();
+        // Lines are counted within the 1:18 scale only, and scales within Classic Cars only
+        assertEquals(Map.of("Classic Cars", 2, "Vintage Cars", 1), facets.get(ProductFacetIndex.PRODUCT_LINE));
+        assertEquals(Map.of("1:10", 1, "1:18", 2), facets.get(ProductFacetIndex.PRODUCT_SCALE));
+        assertEquals(Map.of("Autoart", 1, "Min Lin", 1), facets.get(ProductFacetIndex.PRODUCT_VENDOR));
+        assertEquals(50.0, page.getRanges().get("buyPrice").getMin());
+        assertEquals(55.0, page.getRanges().get("buyPrice").getMax());
+    }
+
+    @Test
+    void numericBoundsAreInclusive(){
+        ProductFacetIndex index = index();
+        FacetedProductPage page = index.filter(ProductFilter.builder()
+                .minBuyPrice(40.0).maxBuyPrice(55.0).build(), 0, 10);
+        assertEquals(List.of("S10_1", "S10_2", "S18_2"), codes(page));
+
+        page = index.filter(ProductFilter.builder().minStock(1500).maxMsrp(110.0).build(), 0, 10);
+        assertEquals(List.of("S10_2", "S12_1"), codes(page));
+
+        assertThrows(IllegalArgumentException.class, () -> index.filter(ProductFilter.builder()
+                .minStock(10).maxStock(5).build(), 0, 10));
+    }
+
+    @Test
+    void addAndRemoveKeepTheIndexCurrent(){
+        ProductFacetIndex index = index();
+        index.remove(List.of("S10_2", "missing"));
+        assertEquals(4, index.size());
+        index.add(product("S24_1", "Ships", "Min Lin", "1:24", 100, 20.0));
+        // Replacing a product moves it to its new values
+        index.add(product("S18_1", "Classic Cars", "Min Lin", "1:18", 7000, 80.0));
+        assertEquals(5, index.size());
+
+        FacetedProductPage page = index.filter(ProductFilter.builder()
+                .productVendors(Set.of("Min Lin")).build(), 0, 10);
+        assertEquals(List.of("S18_1", "S24_1"), codes(page));
+        assertEquals(Map.of("Classic Cars", 1, "Ships", 1), page.getFacets().get(ProductFacetIndex.PRODUCT_LINE));
+        assertEquals(List.of("S24_1"), codes(index.filter(ProductFilter.builder().maxBuyPrice(25.0).build(), 0, 10)));
+    }
+}
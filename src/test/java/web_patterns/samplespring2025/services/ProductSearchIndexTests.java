@@ -0,0 +1,58 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.Product;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTests {
+
+    private static Product product(String code, String description){
+        return new Product(code, "name " + code, "Classic Cars", "1:18", "Vendor", description, 10, 10.0, 20.0);
+    }
+
+    private static List<String> codes(List<Product> products){
+        return products.stream().map(Product::getProductCode).toList();
+    }
+
+    private ProductSearchIndex index(){
+        ProductSearchIndex index = new ProductSearchIndex(false);
+        index.rebuild(List.of(
+                product("S10_2", "Turnable front wheels; steering function"),
+                product("S10_1", "This replica features working kickstand, front suspension"),
+                product("S12_3", "Detailed engine with WORKING steering")));
+        return index;
+    }
+
+    @Test
+    void substringMatchesLikeSemantics() {
+        ProductSearchIndex index = index();
+
+        assertEquals(List.of("S10_1", "S10_2", "S12_3"), codes(index.search("ING", ProductSearchIndex.MatchMode.SUBSTRING)));
+        assertEquals(List.of("S10_1", "S12_3"), codes(index.search("Working", ProductSearchIndex.MatchMode.SUBSTRING)));
+        assertEquals(List.of("S10_2"), codes(index.search("s; st", ProductSearchIndex.MatchMode.SUBSTRING)));
+        assertEquals(List.of("S10_1"), codes(index.search("ic", ProductSearchIndex.MatchMode.SUBSTRING)));
+    }
+
+    @Test
+    void wordAndPrefixModes() {
+        ProductSearchIndex index = index();
+
+        assertEquals(List.of("S10_2", "S12_3"), codes(index.search("steering", ProductSearchIndex.MatchMode.WORD)));
+        assertTrue(index.search("steer", ProductSearchIndex.MatchMode.WORD).isEmpty());
+        assertEquals(List.of("S10_2", "S12_3"), codes(index.search("steer", ProductSearchIndex.MatchMode.PREFIX)));
+        assertEquals(List.of("S10_1"), codes(index.search("front kick", ProductSearchIndex.MatchMode.PREFIX)));
+    }
+
+    @Test
+    void incrementalAddAndRemove() {
+        ProductSearchIndex index = index();
+        index.remove(List.of("S10_2"));
+        index.add(product("S18_4", "Opening hood and steering wheel"));
+
+        assertEquals(List.of("S12_3", "S18_4"), codes(index.search("steering", ProductSearchIndex.MatchMode.SUBSTRING)));
+        assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,140 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+import web_patterns.samplespring2025.entities.CustomerValue;
+import web_patterns.samplespring2025.entities.ProductLineSales;
+import web_patterns.samplespring2025.entities.SaleLine;
+import web_patterns.samplespring2025.entities.SalesSummary;
+import web_patterns.samplespring2025.persistence.IndexedRowMapper;
+import web_patterns.samplespring2025.persistence.SalesDao;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesAnalyticsServiceTests {
+
+    // Stands in for orderdetails - lines are kept in order number order, and a scan can be made to fail part way
+    private static class FakeSalesDao implements SalesDao {
+        private final List<SaleLine> lines = new ArrayList<>();
+        private final List<Integer> scannedFrom = new ArrayList<>();
+        private int failAfterLines = -1;
+
+        @Override
+        public int forEachSaleLine(int afterOrderNumber, IndexedRowMapper.RowHandler<SaleLine> handler)
+                throws SQLException {
+            scannedFrom.add(afterOrderNumber);
+            int count = 0;
+            for(SaleLine line : lines){
+                if(line.getOrderNumber() > afterOrderNumber){
+                    if(count == failAfterLines){
+                        throw new SQLException("Connection lost");
+                    }
+                    handler.handle(line);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static SaleLine line(int order, String date, int customer, String product, String productLine,
+                                 int quantity, double price){
+        return new SaleLine(order, LocalDate.parse(date), customer, "Customer " + customer, product,
+                "Product " + product, productLine, quantity, price);
+    }
+
+    private static void addOrders(FakeSalesDao dao){
+        dao.lines.add(line(10100, "2003-01-06", 363, "S18_1749", "Vintage Cars", 30, 136.00));
+        dao.lines.add(line(10100, "2003-01-06", 363, "S18_2248", "Vintage Cars", 50, 55.09));
+        dao.lines.add(line(10101, "2003-01-09", 128, "S18_2325", "Vintage Cars", 25, 108.06));
+        dao.lines.add(line(10101, "2003-01-09", 128, "S10_1678", "Motorcycles", 26, 95.55));
+        dao.lines.add(line(10102, "2003-02-10", 363, "S18_1749", "Vintage Cars", 39, 143.44));
+    }
+
+    @Test
+    void fullScanBuildsEveryView() throws SQLException {
+        FakeSalesDao dao = new FakeSalesDao();
+        addOrders(dao);
+        SalesAnalyticsService analytics = new SalesAnalyticsService(dao, true, 30, 60);
+        analytics.refresh();
+
+        SalesSummary summary = analytics.getSummary();
+        assertEquals(3, summary.getOrders());
+        assertEquals(5, summary.getLines());
+        assertEquals(10102, summary.getLastOrderNumber());
+        assertEquals(4080.00 + 2754.50 + 2701.50 + 2484.30 + 5594.16, summary.getRevenue(), 0.001);
+
+        assertEquals("S18_1749", analytics.getTopProducts(SalesAnalyticsService.Ranking.REVENUE, 1).get(0)
+                .getProductCode());
+        assertEquals(2, analytics.getTopProducts(SalesAnalyticsService.Ranking.QUANTITY, 10).get(0).getOrders());
+
+        ProductLineSales vintage = analytics.getProductLineSales().get(0);
+        assertEquals("Vintage Cars", vintage.getProductLine());
+        // Order 10101 had a vintage car and a motorcycle - it counts once for each line
+        assertEquals(3, vintage.getOrders());
+
+        assertEquals(List.of(YearMonth.of(2003, 1)), analytics.getMonthlySales(null, YearMonth.of(2003, 1))
+                .stream().map(m -> m.getMonth()).toList());
+
+        CustomerValue customer = analytics.getCustomerValue(363);
+        assertEquals(2, customer.getOrders());
+        assertEquals(4080.00 + 2754.50 + 5594.16, customer.getRevenue(), 0.001);
+        assertEquals(LocalDate.parse("2003-02-10"), customer.getLastOrderDate());
+        assertEquals(363, analytics.getTopCustomers(1).get(0).getCustomerNumber());
+        assertNull(analytics.getCustomerValue(999));
+    }
+
+    @Test
+    void refreshOnlyReadsNewOrdersAndMatchesAFullScan() throws SQLException {
+        FakeSalesDao dao = new FakeSalesDao();
+        addOrders(dao);
+        SalesAnalyticsService incremental = new SalesAnalyticsService(dao, true, 30, 60);
+        incremental.refresh();
+        String etag = incremental.getETag();
+
+        // Nothing new - the figures (and ETag) stay as they are
+        incremental.refresh();
+        assertEquals(etag, incremental.getETag());
+
+        dao.lines.add(line(10103, "2003-02-15", 128, "S10_1678", "Motorcycles", 10, 100.00));
+        dao.lines.add(line(10103, "2003-02-15", 128, "S18_2248", "Vintage Cars", 5, 50.00));
+        incremental.refresh();
+        assertEquals(List.of(0, 10102, 10102), dao.scannedFrom);
+        assertNotEquals(etag, incremental.getETag());
+
+        SalesAnalyticsService full = new SalesAnalyticsService(dao, true, 30, 60);
+        full.refresh();
+        assertEquals(full.getSummary().getRevenue(), incremental.getSummary().getRevenue());
+        assertEquals(full.getSummary().getOrders(), incremental.getSummary().getOrders());
+        assertEquals(full.getCustomerValue(128).getRevenue(), incremental.getCustomerValue(128).getRevenue());
+        assertEquals(full.getCustomerValue(128).getOrders(), incremental.getCustomerValue(128).getOrders());
+        assertEquals(full.getMonthlySales(null, null).size(), incremental.getMonthlySales(null, null).size());
+    }
+
+    @Test
+    void failedRefreshKeepsTheCurrentFigures() throws SQLException {
+        FakeSalesDao dao = new FakeSalesDao();
+        SalesAnalyticsService analytics = new SalesAnalyticsService(dao, true, 30, 60);
+        assertThrows(AnalyticsNotReadyException.class, analytics::getSummary);
+
+        addOrders(dao);
+        analytics.refresh();
+        dao.lines.add(line(10103, "2003-02-15", 128, "S10_1678", "Motorcycles", 10, 100.00));
+        dao.lines.add(line(10103, "2003-02-15", 128, "S18_2248", "Vintage Cars", 5, 50.00));
+        dao.failAfterLines = 1;
+        assertThrows(SQLException.class, analytics::refresh);
+        assertEquals(3, analytics.getSummary().getOrders());
+
+        // The next refresh reads the whole order, not just the line the failed one missed
+        dao.failAfterLines = -1;
+        analytics.refresh();
+        assertEquals(4, analytics.getSummary().getOrders());
+        assertEquals(7, analytics.getSummary().getLines());
+        assertThrows(IllegalArgumentException.class, () -> analytics.getTopCustomers(0));
+    }
+}
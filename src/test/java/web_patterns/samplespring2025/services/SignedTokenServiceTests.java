@@ -0,0 +1,107 @@
+package web_patterns.samplespring2025.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedTokenServiceTests {
+    private static final byte[] KEY_1 = key(1);
+    private static final byte[] KEY_2 = key(2);
+
+    private static byte[] key(int fill){
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) fill);
+        return key;
+    }
+
+    @Test
+    void issuedTokenValidatesToItsUsername() {
+        SignedTokenService tokens = new SignedTokenService(Map.of(1, KEY_1), 1, 60, 10);
+
+        String token = tokens.issue("athena");
+
+        assertEquals("athena", tokens.validate(token));
+        assertNotEquals(token, tokens.issue("athena"));
+    }
+
+    @Test
+    void tamperedOrForeignTokensAreRejected() {
+        SignedTokenService tokens = new SignedTokenService(Map.of(1, KEY_1), 1, 60, 10);
+        SignedTokenService other = new SignedTokenService(Map.of(1, KEY_2), 1, 60, 10);
+        String token = tokens.issue("athena");
+        // Change the username inside the payload, keeping the signature
+        String forged = other.issue("kara").split("\\.")[0] + "." + token.split("\\.")[1];
+
+        assertNull(tokens.validate(forged));
+        assertNull(tokens.validate(other.issue("athena")));
+        assertNull(tokens.validate("not-a-token"));
+        assertNull(tokens.validate(token.substring(0, token.length() - 2)));
+        assertEquals(4, tokens.getRejected());
+    }
+
+    @Test
+    void tokensExpireAfterTtl() {
+        AtomicLong now = new AtomicLong(1_000);
+        SignedTokenService tokens = new SignedTokenService(Map.of(1, KEY_1), 1, 60, 10, now::get);
+        String token = tokens.issue("athena");
+
+        now.set(1_059);
+        assertEquals("athena", tokens.validate(token));
+        now.set(1_060);
+        assertNull(tokens.validate(token));
+        assertEquals(1, tokens.getExpired());
+    }
+
+    @Test
+    void oldKeyStillAcceptedAfterRotationUntilRemoved() {
+        SignedTokenService before = new SignedTokenService(Map.of(1, KEY_1), 1, 60, 10);
+        String oldToken = before.issue("athena");
+
+        SignedTokenService rotated = new SignedTokenService(Map.of(1, KEY_1, 2, KEY_2), 2, 60, 10);
+        String newToken = rotated.issue("athena");
+        assertEquals("athena", rotated.validate(oldToken));
+        assertEquals("athena", rotated.validate(newToken));
+
+        SignedTokenService retired = new SignedTokenService(Map.of(2, KEY_2), 2, 60, 10);
+        assertNull(retired.validate(oldToken));
+        assertEquals("athena", retired.validate(newToken));
+    }
+
+    @Test
+    void revokedTokensAreRejectedAndTheListStaysBounded() {
+        AtomicLong now = new AtomicLong(1_000);
+        SignedTokenService tokens = new SignedTokenService(Map.of(1, KEY_1), 1, 60, 2, now::get);
+        String first = tokens.issue("athena");
+        now.set(1_010);
+        String second = tokens.issue("helo");
+        String third = tokens.issue("lee");
+
+        tokens.revoke(first);
+        tokens.revoke("made-up");
+        assertNull(tokens.validate(first));
+        assertEquals("helo", tokens.validate(second));
+        assertEquals(1, tokens.getRevokedCount());
+
+        // Full of unexpired revocations - the logout is refused and every earlier one still holds
+        tokens.revoke(second);
+        tokens.revoke(second);
+        RevocationListFullException full = assertThrows(RevocationListFullException.class,
+                () -> tokens.revoke(third));
+        assertEquals(50, full.getRetryAfterSeconds());
+        assertEquals(2, tokens.getRevokedCount());
+        assertNull(tokens.validate(first));
+        assertNull(tokens.validate(second));
+        assertEquals("lee", tokens.validate(third));
+
+        // Once the first token has expired its revocation is dropped, making room
+        now.set(1_060);
+        tokens.revoke(third);
+        assertEquals(2, tokens.getRevokedCount());
+        assertNull(tokens.validate(third));
+        assertNull(tokens.validate(second));
+    }
+}
@@ -0,0 +1,119 @@
+package web_patterns.samplespring2025.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchLoaderTests {
+
+    @Test
+    void lookupsArrivingDuringALoadShareTheNextBatch() throws Exception {
+        List<Set<String>> batches = new ArrayList<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        BatchLoader<String, String, SQLException> loader = new BatchLoader<>(keys -> {
+            synchronized(batches){
+                batches.add(Set.copyOf(keys));
+            }
+            if(keys.contains("a")){
+                firstStarted.countDown();
+                awaitQuietly(releaseFirst);
+            }
+            Map<String, String> values = new HashMap<>();
+            for(String key : keys){
+                if(!key.equals("missing")){
+                    values.put(key, key.toUpperCase());
+                }
+            }
+            return values;
+        }, 10_000, 3);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            // Nothing else is loading, so "a" goes on its own without waiting for the window
+            Future<String> first = pool.submit(() -> loader.load("a"));
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            List<Future<String>> results = new ArrayList<>();
+            for(String key : List.of("b", "c", "missing")){
+                results.add(pool.submit(() -> loader.load(key)));
+            }
+            // The batch filled (3 keys), so it ran without waiting for "a" or the 10s window
+            assertEquals("B", results.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals("C", results.get(1).get(5, TimeUnit.SECONDS));
+            assertNull(results.get(2).get(5, TimeUnit.SECONDS));
+
+            releaseFirst.countDown();
+            assertEquals("A", first.get(5, TimeUnit.SECONDS));
+        }finally {
+            releaseFirst.countDown();
+            pool.shutdownNow();
+        }
+        assertEquals(List.of(Set.of("a"), Set.of("b", "c", "missing")), batches);
+        assertEquals(2, loader.getBatches());
+    }
+
+    @Test
+    void waitingBatchRunsOnceTheLoadBeforeItFinishes() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        BatchLoader<String, String, SQLException> loader = new BatchLoader<>(keys -> {
+            if(keys.contains("a")){
+                firstStarted.countDown();
+                awaitQuietly(releaseFirst);
+            }
+            Map<String, String> values = new HashMap<>();
+            for(String key : keys){
+                values.put(key, key.toUpperCase());
+            }
+            return values;
+        }, 10_000, 100);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = pool.submit(() -> loader.load("a"));
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            Future<String> second = pool.submit(() -> loader.load("b"));
+
+            // "b" waits for "a" rather than for its own window
+            releaseFirst.countDown();
+            assertEquals("A", first.get(5, TimeUnit.SECONDS));
+            assertEquals("B", second.get(5, TimeUnit.SECONDS));
+        }finally {
+            releaseFirst.countDown();
+            pool.shutdownNow();
+        }
+        assertEquals(2, loader.getBatches());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void batchExceptionReachesEveryCaller() {
+        BatchLoader<String, String, SQLException> loader = new BatchLoader<>(keys -> {
+            throw new SQLException("Database down");
+        }, 0, 10);
+
+        assertThrows(SQLException.class, () -> loader.load("a"));
+        assertThrows(SQLException.class, () -> loader.load("b"));
+        assertEquals(2, loader.getBatches());
+    }
+}
@@ -0,0 +1,61 @@
+package web_patterns.samplespring2025.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTests {
+
+    @Test
+    void lruEvictsLeastRecentlyUsed() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2, 0, BoundedCache.EvictionPolicy.LRU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void lfuEvictsLeastFrequentlyUsed() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2, 0, BoundedCache.EvictionPolicy.LFU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.put("c", 3);
+
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 20, BoundedCache.EvictionPolicy.LRU);
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a"));
+        Thread.sleep(40);
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getExpirations());
+    }
+
+    @Test
+    void invalidateRemovesEntry() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 0, BoundedCache.EvictionPolicy.LFU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.invalidate("a");
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+}
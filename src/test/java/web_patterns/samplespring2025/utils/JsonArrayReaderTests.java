@@ -0,0 +1,56 @@
+package web_patterns.samplespring2025.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonArrayReaderTests {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    record Item(String name, int count) {
+        Item {
+            if(name == null){
+                throw new NullPointerException("name is marked non-null but is null");
+            }
+        }
+    }
+
+    private JsonArrayReader<Item> reader(String json) throws IOException {
+        return new JsonArrayReader<>(mapper.createParser(json), mapper.readerFor(Item.class));
+    }
+
+    @Test
+    void badElementsAreReportedAndReadingCarriesOn() throws IOException {
+        JsonArrayReader<Item> items = reader("""
+                [{"name":"a","count":1}, {"count":2}, null, {"name":"d","count":"many"}, {"name":"e","count":5}]""");
+        List<Object> read = new ArrayList<>();
+        while(items.hasNext()){
+            try {
+                read.add(items.next());
+            }catch(IllegalArgumentException e){
+                read.add(e.getMessage());
+            }
+        }
+        assertEquals(5, read.size());
+        assertEquals(new Item("a", 1), read.get(0));
+        assertTrue(((String) read.get(1)).startsWith("Element 1 could not be read"));
+        assertNull(read.get(2));
+        assertTrue(((String) read.get(3)).startsWith("Element 3 could not be read"));
+        assertEquals(new Item("e", 5), read.get(4));
+    }
+
+    @Test
+    void bodyThatIsNotAnArrayCannotBeRead() throws IOException {
+        assertFalse(reader("[]").hasNext());
+        assertThrows(UncheckedIOException.class, () -> reader("{\"name\":\"a\"}").hasNext());
+        JsonArrayReader<Item> truncated = reader("[{\"name\":\"a\",\"count\":1}, {\"name\":");
+        assertEquals("a", truncated.next().name());
+        assertThrows(UncheckedIOException.class, truncated::next);
+    }
+}
@@ -0,0 +1,116 @@
+package web_patterns.samplespring2025.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for(int i = 0; i < 8; i++){
+                results.add(pool.submit(() -> singleFlight.execute("S10_1678", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "loaded";
+                })));
+            }
+            // Let every caller arrive before the load finishes
+            while(singleFlight.getCollapsed() < 7){
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for(Future<String> result : results){
+                assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+            }
+        }finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getLoads());
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    void waitersReceiveTheLoadersException() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> singleFlight.execute("key", () -> {
+                release.await();
+                throw new SQLException("Database down");
+            }));
+            while(singleFlight.getInFlight() == 0){
+                Thread.sleep(5);
+            }
+            Future<String> waiter = pool.submit(() -> singleFlight.execute("key", () -> "not used"));
+            while(singleFlight.getCollapsed() == 0){
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception waiterError = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, leaderError.getCause());
+            assertSame(leaderError.getCause(), waiterError.getCause());
+        }finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void laterCallsStartAFreshLoad() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", loads::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", loads::incrementAndGet));
+        assertEquals(0, singleFlight.getCollapsed());
+    }
+
+    @Test
+    void forgottenLoadIsNotJoined() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> old = pool.submit(() -> singleFlight.execute("key", () -> {
+                release.await();
+                return "old";
+            }));
+            while(singleFlight.getInFlight() == 0){
+                Thread.sleep(5);
+            }
+            singleFlight.forget("key");
+
+            assertEquals("new", singleFlight.execute("key", () -> "new"));
+            release.countDown();
+            assertEquals("old", old.get(5, TimeUnit.SECONDS));
+            assertEquals(0, singleFlight.getCollapsed());
+            assertEquals(0, singleFlight.getInFlight());
+        }finally {
+            pool.shutdownNow();
+        }
+    }
+}